@@ -0,0 +1,87 @@
+package cachesimulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//decoding of addresses into tag and index , and parsing of the trace formats
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressDecodeBenchmark {
+    static final int REQUESTS = 1 << 16;
+    static final String CONFIG_LINE = "32 - 0 - 4 - wb - wa";
+    static final String SIZE_LINE = "32768";
+
+    CacheSimulator.Cache cache;
+    CacheSimulator.RequestChunk chunk;
+    byte[] text;
+    InputStream savedIn;
+
+    @Setup
+    public void setUp() {
+        cache = CacheSimulator.Config.makeCaches(CONFIG_LINE, SIZE_LINE, new ArrayList<>()).get(0);
+        chunk = SyntheticTrace.generate(REQUESTS, 0.5, 1);
+        text = SyntheticTrace.toText(CONFIG_LINE, SIZE_LINE, chunk).getBytes(StandardCharsets.US_ASCII);
+        savedIn = System.in;
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setIn(savedIn);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void tagAndIndex(Blackhole blackhole) {
+        for (int i = 0; i < chunk.count; i++) {
+            blackhole.consume(cache.getTag(chunk.addresses[i]));
+            blackhole.consume(cache.getIndex(chunk.addresses[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void streamTextTrace(Blackhole blackhole) throws IOException {
+        CacheSimulator.TraceReader reader = new CacheSimulator.TraceReader(new ByteArrayInputStream(text));
+        reader.readLine();
+        reader.readLine();
+        CacheSimulator.Request request = new CacheSimulator.Request(0, 0L);
+        while (reader.next(request)) blackhole.consume(request.address);
+    }
+
+    @State(Scope.Thread)
+    public static class StandardInput {
+        @Setup(Level.Invocation)
+        public void setIn(AddressDecodeBenchmark benchmark) {
+            System.setIn(new ByteArrayInputStream(benchmark.text));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public Object readInput(StandardInput input) throws IOException {
+        return CacheSimulator.Config.readInput();
+    }
+}
@@ -0,0 +1,87 @@
+package cachesimulator;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//lookUp , hitHandle and missHandle on a 64KB cache at several associativities
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheAccessBenchmark {
+    static final int REQUESTS = 1 << 14;
+    static final int CACHE_SIZE = 64 << 10;
+    static final int BLOCK_SIZE = 32;
+
+    @Param({"1", "4", "16", "32"})
+    int associativity;
+
+    @Param({"lru", "plru", "srrip"})
+    String replacement;
+
+    CacheSimulator.Cache cache;
+    long[] residentAddresses; //all in the cache
+    long[] missAddresses; //never in the cache
+    int[] indexes;
+    long[] tags;
+    int missCursor;
+
+    @Setup
+    public void setUp() {
+        String configLine = BLOCK_SIZE + " - 0 - " + associativity + " - wb - wa - " + replacement;
+        cache = CacheSimulator.Config.makeCaches(configLine, String.valueOf(CACHE_SIZE), new ArrayList<>()).get(0);
+        residentAddresses = new long[REQUESTS];
+        indexes = new int[REQUESTS];
+        tags = new long[REQUESTS];
+        int lines = CACHE_SIZE / BLOCK_SIZE;
+        for (int i = 0; i < lines; i++) cache.readAddress((long) i * BLOCK_SIZE, 0, 0);
+        for (int i = 0; i < REQUESTS; i++) {
+            residentAddresses[i] = (long) ((i * 7919) % lines) * BLOCK_SIZE;
+            indexes[i] = cache.getIndex(residentAddresses[i]);
+            tags[i] = cache.getTag(residentAddresses[i]);
+        }
+        missAddresses = new long[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) missAddresses[i] = CACHE_SIZE + (long) i * BLOCK_SIZE * 13;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void lookUpHit(Blackhole blackhole) {
+        for (int i = 0; i < REQUESTS; i++) blackhole.consume(cache.lookUp(indexes[i], tags[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void hitHandle(Blackhole blackhole) {
+        for (int i = 0; i < REQUESTS; i++) {
+            int line = cache.lookUp(indexes[i], tags[i]);
+            blackhole.consume(cache.hitHandle(indexes[i], line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void missHandle(Blackhole blackhole) {
+        for (int i = 0; i < REQUESTS; i++) {
+            long address = missAddresses[i] + ((long) missCursor << 28); //a fresh block every time
+            blackhole.consume(cache.missHandle(cache.getIndex(address), cache.getTag(address), 0, 0));
+        }
+        missCursor = (missCursor + 1) & 7;
+    }
+}
@@ -0,0 +1,36 @@
+package cachesimulator;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+//synthetic traces for the benchmarks - a share of the accesses (the locality) goes to a small
+//hot region , the rest is spread over the whole address space
+public class SyntheticTrace {
+    static final int HOT_BYTES = 32 << 10;
+
+    public static CacheSimulator.RequestChunk generate(int count, double locality, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        CacheSimulator.RequestChunk chunk = new CacheSimulator.RequestChunk(count);
+        for (int i = 0; i < count; i++) {
+            int pick = random.nextInt(10);
+            int type = pick < 5 ? 0 : pick < 7 ? 1 : 2; //half data reads , a fifth writes , the rest instructions
+            long address = random.nextDouble() < locality ? random.nextInt(HOT_BYTES) : random.nextInt(Integer.MAX_VALUE);
+            chunk.add(type, address & ~3L, 0);
+        }
+        return chunk;
+    }
+
+    //the same requests in the text format of the input
+    public static String toText(String configLine, String sizeLine, CacheSimulator.RequestChunk chunk) {
+        StringBuilder text = new StringBuilder();
+        text.append(configLine).append('\n').append(sizeLine).append('\n');
+        for (int i = 0; i < chunk.count; i++) {
+            text.append(chunk.types[i]).append(' ').append(Long.toHexString(chunk.addresses[i])).append('\n');
+        }
+        return text.toString();
+    }
+
+    public static CacheSimulator.CacheManager manager(String configLine, String sizeLine) {
+        return new CacheSimulator.CacheManager(CacheSimulator.Config.makeCaches(configLine, sizeLine, new ArrayList<>()));
+    }
+}
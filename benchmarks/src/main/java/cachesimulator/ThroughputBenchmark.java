@@ -0,0 +1,53 @@
+package cachesimulator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//end to end accesses per second of a unified and a split cache on synthetic traces
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThroughputBenchmark {
+    static final int REQUESTS = 1 << 20;
+
+    @Param({"0", "1"})
+    String split;
+
+    @Param({"0.5", "0.9", "0.99"})
+    double locality;
+
+    @Param({"8"})
+    int associativity;
+
+    CacheSimulator.CacheManager manager;
+    CacheSimulator.RequestChunk chunk;
+
+    @Setup
+    public void setUp() {
+        String sizeLine = split.equals("1") ? "32768 - 32768" : "65536";
+        manager = SyntheticTrace.manager("32 - " + split + " - " + associativity + " - wb - wa", sizeLine);
+        chunk = SyntheticTrace.generate(REQUESTS, locality, 3);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public long accesses() {
+        manager.handleChunk(chunk);
+        return manager.caches.get(0).dataReporter.miss;
+    }
+}
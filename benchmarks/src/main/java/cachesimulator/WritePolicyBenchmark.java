@@ -0,0 +1,52 @@
+package cachesimulator;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//writeData under each of the four cases of writePolicies
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WritePolicyBenchmark {
+    static final int REQUESTS = 1 << 16;
+
+    @Param({"wb - wa", "wb - nw", "wt - wa", "wt - nw"})
+    String policies;
+
+    @Param({"0.9"})
+    double locality;
+
+    CacheSimulator.Cache cache;
+    CacheSimulator.Request[] writes;
+
+    @Setup
+    public void setUp() {
+        cache = CacheSimulator.Config.makeCaches("32 - 0 - 4 - " + policies, "32768", new ArrayList<>()).get(0);
+        CacheSimulator.RequestChunk chunk = SyntheticTrace.generate(REQUESTS, locality, 2);
+        writes = new CacheSimulator.Request[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) writes[i] = new CacheSimulator.Request(1, chunk.addresses[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public long writeData() {
+        for (CacheSimulator.Request write : writes) cache.writeData(write);
+        return cache.dataReporter.copiesBack;
+    }
+}
@@ -0,0 +1,3994 @@
+package cachesimulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+public class CacheSimulator {
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--convert")) { //text trace to binary trace
+            BinaryTraceWriter.convert(args[1], args[2]);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--sweep")) { //grid file , trace file
+            SweepEngine sweepEngine = new SweepEngine(args[1]);
+            sweepEngine.run(TraceReader.open(args[2]));
+            sweepEngine.printTable();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--hierarchy")) { //lower levels file , trace file
+            Hierarchy hierarchy = new Hierarchy(args[1], TraceReader.open(args[2]));
+            hierarchy.run();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--sharded")) { //threads , trace file
+            ShardedSimulation sharded = new ShardedSimulation(TraceReader.open(args[2]), Integer.parseInt(args[1]));
+            sharded.run();
+            return;
+        }
+        if (args.length == 6 && args[0].equals("--coherent")) { //cores , mesi|moesi , snoop|directory , threads , trace file
+            CoherentSimulation coherent = new CoherentSimulation(TraceReader.open(args[5]), Integer.parseInt(args[1]),
+                    args[2], args[3], Integer.parseInt(args[4]));
+            coherent.run();
+            return;
+        }
+        if (args.length >= 3 && args[0].equals("--sample-sets")) { //1 in k sets , trace file [full]
+            SampledSimulation sampled = SampledSimulation.setSampling(args[2], Integer.parseInt(args[1]));
+            sampled.run();
+            sampled.printEstimates(args.length > 3 && args[3].equals("full"));
+            return;
+        }
+        if (args.length >= 5 && args[0].equals("--sample-time")) { //period , window , warm up , trace file [full]
+            SampledSimulation sampled = SampledSimulation.timeSampling(args[4], Long.parseLong(args[1]),
+                    Long.parseLong(args[2]), Long.parseLong(args[3]));
+            sampled.run();
+            sampled.printEstimates(args.length > 5 && args[5].equals("full"));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--stack")) { //trace file [max set bits] [max ways] [verify]
+            int maxSetBits = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+            int maxWays = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+            boolean verify = args.length > 4 && args[4].equals("verify");
+            StackDistanceProfiler profiler = new StackDistanceProfiler(args[1], maxSetBits, maxWays);
+            profiler.run();
+            profiler.printTable();
+            if (verify) profiler.verify();
+            return;
+        }
+        //options of the streaming mode , before the trace
+        LiveMetrics liveMetrics = null;
+        String checkpointPath = null;
+        long checkpointEvery = 0;
+        String restorePath = null;
+        boolean fork = false;
+        boolean classify = false;
+        long workingSetEvery = -1;
+        String timingSpec = null;
+        options:
+        while (args.length > 0) {
+            switch (args[0]) {
+                case "--metrics": //accesses between reports , seconds between reports
+                    liveMetrics = new LiveMetrics(Long.parseLong(args[1]), Double.parseDouble(args[2]));
+                    args = Arrays.copyOfRange(args, 3, args.length);
+                    break;
+                case "--checkpoint": //checkpoint file , accesses between checkpoints
+                    checkpointPath = args[1];
+                    checkpointEvery = Long.parseLong(args[2]);
+                    args = Arrays.copyOfRange(args, 3, args.length);
+                    break;
+                case "--classify": //compulsory , capacity and conflict misses
+                    classify = true;
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                    break;
+                case "--timing": //hit:miss:writeback:banks:mshrs latencies in cycles
+                    timingSpec = args[1];
+                    args = Arrays.copyOfRange(args, 2, args.length);
+                    break;
+                case "--working-set": //accesses between samples of the unique blocks
+                    workingSetEvery = Math.max(Long.parseLong(args[1]), 0);
+                    args = Arrays.copyOfRange(args, 2, args.length);
+                    break;
+                case "--resume": //checkpoint file - continues the trace where the checkpoint was taken
+                case "--fork": //checkpoint file - runs the trace from its start on the warmed caches
+                    fork = args[0].equals("--fork");
+                    restorePath = args[1];
+                    args = Arrays.copyOfRange(args, 2, args.length);
+                    break;
+                default:
+                    break options;
+            }
+        }
+        CacheManager cacheManager;
+        if (args.length > 0) { //streaming mode - trace file path , or - for stdin
+            TraceReader traceReader = args[0].equals("-") ? new TraceReader(System.in) : TraceReader.open(args[0]);
+            cacheManager = new CacheManager(traceReader);
+            cacheManager.liveMetrics = liveMetrics;
+            cacheManager.checkpointPath = checkpointPath;
+            cacheManager.checkpointEvery = checkpointEvery;
+            if (classify || workingSetEvery >= 0) {
+                for (Cache cache : cacheManager.caches) cache.workingSet = new WorkingSet(workingSetEvery);
+            }
+            if (classify) {
+                for (Cache cache : cacheManager.caches) cache.classifier = new MissClassifier(cache.lineTags.length);
+            }
+            TimingModel timing = timingSpec == null ? null : TimingModel.create(timingSpec);
+            if (timing != null) {
+                for (Cache cache : cacheManager.caches) {
+                    cache.timing = new TimingModel(timing.hitLatency, timing.missPenalty, timing.writeBackCost,
+                            timing.bankFree.length, timing.mshrDone.length);
+                }
+            }
+            if (restorePath != null) cacheManager.restoreCheckpoint(restorePath, fork);
+        } else {
+            cacheManager = new CacheManager();
+        }
+        cacheManager.manageRequests();
+    }
+    public static class Request {
+        int type; //0,1,2
+        String commandAddress;
+        long address; //parsed once - 64 bit unsigned
+        int core; //core that issued the request , 0 in single core traces
+
+        public Request(int type,String commandAddress){
+            this.type = type;
+            this.commandAddress = commandAddress;
+            this.address = Long.parseUnsignedLong(commandAddress, 16);
+        }
+
+        public Request(int type,long address){
+            this.type = type;
+            this.address = address;
+        }
+    }
+    public static class OutputReport {
+        //for both data and instruction - 64 bit so long traces don't overflow
+        long access;
+        long miss;
+        long hit ;
+        long replace;
+        long dirtyEvictions;
+        //for traffic
+        long demandFetch;
+        long copiesBack;
+
+        //all fields initialized to zero
+        public OutputReport(){}
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(access);
+            out.writeLong(miss);
+            out.writeLong(hit);
+            out.writeLong(replace);
+            out.writeLong(dirtyEvictions);
+            out.writeLong(demandFetch);
+            out.writeLong(copiesBack);
+        }
+
+        public void load(DataInput in) throws IOException {
+            access = in.readLong();
+            miss = in.readLong();
+            hit = in.readLong();
+            replace = in.readLong();
+            dirtyEvictions = in.readLong();
+            demandFetch = in.readLong();
+            copiesBack = in.readLong();
+        }
+
+        public void add(OutputReport other) {
+            access += other.access;
+            miss += other.miss;
+            hit += other.hit;
+            replace += other.replace;
+            dirtyEvictions += other.dirtyEvictions;
+            demandFetch += other.demandFetch;
+            copiesBack += other.copiesBack;
+        }
+    }
+
+    public static class PrefetchReport {
+        long issued;
+        long useful; //prefetched blocks used by a demand access
+        long late; //used before the prefetch arrived
+        long unused; //evicted or dropped before any use
+        long polluting; //demand misses on blocks a prefetch evicted
+        long fetch; //words brought in by prefetches
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(issued);
+            out.writeLong(useful);
+            out.writeLong(late);
+            out.writeLong(unused);
+            out.writeLong(polluting);
+            out.writeLong(fetch);
+        }
+
+        public void load(DataInput in) throws IOException {
+            issued = in.readLong();
+            useful = in.readLong();
+            late = in.readLong();
+            unused = in.readLong();
+            polluting = in.readLong();
+            fetch = in.readLong();
+        }
+
+        public void add(PrefetchReport other) {
+            issued += other.issued;
+            useful += other.useful;
+            late += other.late;
+            unused += other.unused;
+            polluting += other.polluting;
+            fetch += other.fetch;
+        }
+    }
+
+    public static class Cache {
+        Config cacheConfig;
+        ArrayList<Request> cacheRequests; // all the requests given to cache from input
+        //address related fields
+        int setNum;
+        int offsetBitNum;
+        int indexBitNum;
+        int tagBitNum;
+        //shifts and masks derived from the bit numbers
+        long addressMask; //bits an address may use
+        int tagShift;
+        long indexMask;
+        long tagMask;
+        //cache lines - flat arrays indexed by set * ways + way
+        int ways;
+        long[] lineTags;
+        boolean[] lineValid;
+        boolean[] lineDirty;
+        byte[] lineType; //0 for data , 2 for instruction
+        ReplacementPolicy replacementPolicy;
+        WriteBuffer writeBuffer; //null when word writes go straight to memory
+        //prefetching - the arrays are only made when there is a prefetcher
+        Prefetcher prefetcher;
+        int prefetchLatency; //accesses between issuing a prefetch and its block arriving
+        boolean[] linePrefetched; //filled by a prefetch and not used yet
+        long[] lineReady; //access count at which a prefetched block arrives
+        long[] pollutionFilter; //block number + 1 of blocks evicted by prefetches , hashed by block
+        long accessClock;
+        PrefetchReport prefetchReport = new PrefetchReport();
+        VictimCache victimCache; //null when evicted blocks leave the level at once
+        MissClassifier classifier; //null unless misses are classified - needs the working set
+        WorkingSet workingSet; //null unless first touches are tracked
+        TimingModel timing; //null unless latency is estimated
+        //hierarchy - null next level means memory
+        static final int NINE = 0; //neither inclusive nor exclusive
+        static final int INCLUSIVE = 1;
+        static final int EXCLUSIVE = 2;
+        Cache nextLevel;
+        ArrayList<Cache> upperLevels = new ArrayList<>();
+        int inclusion = NINE; //how this cache relates to its upper levels
+        long[] setMisses; //misses per set , only kept while live metrics are on
+        byte[] lineState; //coherence state of each line , only made for coherent runs
+        //output result
+        OutputReport dataReporter;
+        OutputReport instructionReporter;
+
+        public Cache(Config cacheConfig, ArrayList<Request> cacheRequests) {
+            this.setCacheConfig(cacheConfig);
+            this.cacheRequests = cacheRequests;
+            //address related fields - for data cache
+            this.setNum = (int) (cacheConfig.cacheSize / (cacheConfig.associativity * cacheConfig.blockSize));
+            this.offsetBitNum = (int) (Math.log(cacheConfig.blockSize) / Math.log(2));
+            this.indexBitNum = (int) (Math.log(setNum) / Math.log(2));
+            int addressBits = cacheConfig.addressBits;
+            if (addressBits > 64 || addressBits < this.indexBitNum + this.offsetBitNum) {
+                System.out.println("Invalid address width , using 64");
+                addressBits = cacheConfig.addressBits = 64;
+            }
+            this.tagBitNum = addressBits - (this.indexBitNum + this.offsetBitNum);
+            this.tagShift = this.offsetBitNum + this.indexBitNum;
+            this.indexMask = (1L << this.indexBitNum) - 1;
+            this.tagMask = this.tagBitNum == 64 ? -1L : (1L << this.tagBitNum) - 1; //a shift by 64 is no shift
+            this.addressMask = addressBits == 64 ? -1L : (1L << addressBits) - 1;
+            makeCacheSets(setNum);
+            //output result
+            dataReporter = new OutputReport();
+            instructionReporter = new OutputReport();
+        }
+
+        public void setCacheConfig(Config cacheConfig) {
+            this.cacheConfig = cacheConfig;
+        }
+
+        public void makeCacheSets(int setNum) {
+            this.ways = this.cacheConfig.associativity;
+            int lines = setNum * this.ways;
+            this.lineTags = new long[lines];
+            this.lineValid = new boolean[lines];
+            this.lineDirty = new boolean[lines];
+            this.lineType = new byte[lines];
+            this.replacementPolicy = ReplacementPolicy.create(this.cacheConfig.replacementPolicy, setNum, this.ways);
+            this.writeBuffer = WriteBuffer.create(this.cacheConfig.writeBuffer);
+            this.prefetcher = Prefetcher.create(this.cacheConfig.prefetcher);
+            if (this.prefetcher != null) {
+                this.prefetchLatency = Prefetcher.latency(this.cacheConfig.prefetcher);
+                this.linePrefetched = new boolean[lines];
+                this.lineReady = new long[lines];
+                this.pollutionFilter = new long[Integer.highestOneBit(lines)];
+            }
+            this.victimCache = VictimCache.create(this.cacheConfig.victimCache);
+        }
+
+        public boolean inAddressSpace(long address) {
+            return (address & ~this.addressMask) == 0;
+        }
+
+        public long getTag(long address) {
+            return (address >>> this.tagShift) & this.tagMask;
+        }
+
+        public int getIndex(long address) {
+            return (int) ((address >>> this.offsetBitNum) & this.indexMask);
+        }
+
+        public void handleRequest(ArrayList<Request> cacheRequests) {
+            for (Request request : cacheRequests) {
+                handleRequest(request);
+            }
+        }
+
+        public void handleRequest(Request request) {
+            switch (request.type) {
+                case 0:
+                    readData(request, 0,0);
+                    break;
+                case 1:
+                    writeData(request);
+                    break;
+                case 2:
+                    readData(request, 2,0);
+                    break;
+                default:
+                    System.out.println("Invalid request type");
+            }
+        }
+
+        //returns the line holding the tag , -1 on miss
+        public int lookUp(int index, long tag) {
+            int first = index * this.ways;
+            int end = first + this.ways;
+            for (int line = first; line < end; line++) {
+                if (this.lineValid[line] && this.lineTags[line] == tag)
+                    return line; //hit
+            }
+            return -1;
+        }
+
+        //the block is in its set or in the victim cache
+        public boolean holds(int indexInt, long inputTag) {
+            if (lookUp(indexInt, inputTag) != -1) return true;
+            return victimCache != null && victimCache.find((inputTag << tagShift) | ((long) indexInt << offsetBitNum)) != -1;
+        }
+
+        //address of the block held by a line
+        public long blockAddress(int indexInt, int line) {
+            return (lineTags[line] << this.tagShift) | ((long) indexInt << this.offsetBitNum);
+        }
+
+        //command type 0
+        public void readData(Request request, int mode,int split) { // 0 for data , 2 for instruction
+            if (!inAddressSpace(request.address)) {
+                System.out.println("Invalid address");
+                return;
+            }
+            if (timing == null) {
+                readAddress(request.address, mode, split);
+                return;
+            }
+            long fetch = dataReporter.demandFetch;
+            long copiesBack = dataReporter.copiesBack;
+            readAddress(request.address, mode, split);
+            timing.access(getIndex(request.address), request.address >>> offsetBitNum, dataReporter.demandFetch != fetch,
+                    dataReporter.copiesBack != copiesBack, mode == 2 ? 1 : 0);
+        }
+        public void readAddress(long address, int mode,int split) {
+            //split if 1 , unified if 0
+            if (writeBuffer != null) dataReporter.copiesBack += writeBuffer.tick();
+            long inputTag = getTag(address); //input , new
+            int indexInt = getIndex(address);
+
+            if (prefetcher != null) accessClock++;
+            int line = lookUp(indexInt, inputTag);
+            if (line == -1 && victimCache != null) line = fromVictimCache(indexInt, inputTag, mode);
+            boolean trigger = line == -1;
+            boolean miss = false; //a block a stream buffer supplies is a hit
+            if (line != -1) {
+                if (mode == 0) this.dataReporter.hit++;
+                else if (mode == 2) this.instructionReporter.hit++;
+                if (prefetcher != null) trigger = demandUse(line);
+                hitHandle(indexInt,line);
+            } else if (prefetcher != null && prefetcher.supply(this, address, mode)) { //a stream buffer had the block
+                if (mode == 0) this.dataReporter.hit++;
+                else if (mode == 2) this.instructionReporter.hit++;
+            } else { //miss
+                miss = true;
+                this.dataReporter.demandFetch += (cacheConfig.blockSize / 4);
+                if (mode == 0) this.dataReporter.miss++;
+                else if (mode == 2) this.instructionReporter.miss++;
+                if (setMisses != null) setMisses[indexInt]++;
+                if (prefetcher != null) checkPollution(address);
+                boolean dirty = nextLevel != null && nextLevel.fetchForUpper(address, mode);
+                int newLine = missHandle(indexInt,inputTag,mode,split);
+                if (dirty) lineDirty[newLine] = true;
+            }
+            if (workingSet != null) {
+                boolean firstTouch = workingSet.touch(address >>> offsetBitNum, miss, mode);
+                if (classifier != null) classifier.classify(address >>> offsetBitNum, miss, mode, firstTouch);
+            }
+            if (prefetcher != null) prefetcher.onAccess(this, address, trigger);
+        }
+        public int writePolicies (String writePolicy, String writeMissPolicy){
+            int res;
+            if (writePolicy.equals("wb") && writeMissPolicy.equals("wa")) res = 1;
+            else if (writePolicy.equals("wb") && writeMissPolicy.equals("nw")) res = 2;
+            else if (writePolicy.equals("wt") && writeMissPolicy.equals("wa")) res = 3;
+            else if (writePolicy.equals("wt") && writeMissPolicy.equals("nw")) res = 4;
+            else {
+                res = -1;
+                System.out.println("Invalid write policy");
+            }
+            return res;
+        }
+        public void writeData (Request request){
+            if (!inAddressSpace(request.address)) {
+                System.out.println("Invalid address");
+                return;
+            }
+            if (timing == null) {
+                writeAddress(request.address);
+                return;
+            }
+            long fetch = dataReporter.demandFetch; //a no allocate store miss fetches nothing
+            long copiesBack = dataReporter.copiesBack;
+            writeAddress(request.address);
+            timing.access(getIndex(request.address), request.address >>> offsetBitNum, dataReporter.demandFetch != fetch,
+                    dataReporter.copiesBack != copiesBack, 0);
+        }
+        public void writeAddress (long address){
+            if (writeBuffer != null) dataReporter.copiesBack += writeBuffer.tick();
+            long inputTag = getTag(address);
+            int indexInt = getIndex(address);
+
+            String writePolicy = cacheConfig.writePolicy;
+            String writeMissPolicy = cacheConfig.writeMissPolicy;
+            int res = writePolicies(writePolicy, writeMissPolicy);
+
+            int writeLine = lookUp(indexInt, inputTag);
+            if (writeLine == -1 && victimCache != null) writeLine = fromVictimCache(indexInt, inputTag, 0);
+            if (workingSet != null) {
+                boolean firstTouch = workingSet.touch(address >>> offsetBitNum, writeLine == -1, 0);
+                if (classifier != null) classifier.classify(address >>> offsetBitNum, writeLine == -1, 0, firstTouch);
+            }
+            if (writeLine == -1 && setMisses != null) setMisses[indexInt]++;
+            boolean trigger = writeLine == -1;
+            if (prefetcher != null) {
+                accessClock++;
+                if (writeLine != -1) trigger = demandUse(writeLine);
+                else checkPollution(address);
+            }
+            switch (res) {
+                case 1: // write back and write allocate
+                    if (writeLine == -1) { // no change in copies back - write the whole block
+                        dataReporter.demandFetch += (cacheConfig.blockSize / 4);
+                        dataReporter.miss++;
+                        if (nextLevel != null) nextLevel.fetchForUpper(address, 0);
+                        int newLine = missHandle(indexInt,inputTag,0,0);
+                        lineDirty[newLine] = true;
+                    } else {
+                        dataReporter.hit++;
+                        hitHandle(indexInt,writeLine);
+                        lineDirty[writeLine] = true;  //writes in cache - NO copy back
+                    }
+                    break;
+                case 2: // write back and no write allocate
+                    if (writeLine == -1) { //miss - writes one word
+                        dataReporter.miss++;
+                        writeWord(address); // in word
+                        if (nextLevel != null) nextLevel.writeFromUpper(address);
+                    } else { //hit
+                        dataReporter.hit++;
+                        hitHandle(indexInt,writeLine);
+                        lineDirty[writeLine] = true;
+                    }
+                    break;
+                case 3: // write through and write allocate - write 1 word
+                    if (writeLine == -1) {
+                        dataReporter.miss++;
+                        writeWord(address);
+                        dataReporter.demandFetch += (cacheConfig.blockSize / 4);
+                        boolean dirty = nextLevel != null && nextLevel.fetchForUpper(address, 0);
+                        int newLine = missHandle(indexInt,inputTag,0,0);
+                        if (dirty) lineDirty[newLine] = true;
+                        if (nextLevel != null) nextLevel.writeFromUpper(address);
+
+                    } else { //hit
+                        dataReporter.hit++;
+                        hitHandle(indexInt,writeLine);
+                        writeWord(address);
+                        if (nextLevel != null) nextLevel.writeFromUpper(address);
+                    }
+                    break;
+                case 4: // write through and no write allocate
+                    if (writeLine == -1) {
+                        dataReporter.miss++;
+                        writeWord(address);
+                    } else {
+                        dataReporter.hit++;
+                        hitHandle(indexInt,writeLine);
+                        writeWord(address);
+                    }
+                    if (nextLevel != null) nextLevel.writeFromUpper(address);
+                    break;
+                default:
+                    System.out.println("Invalid write policies");
+                    break;
+
+            }
+            if (prefetcher != null) prefetcher.onAccess(this, address, trigger);
+        }
+        //a miss in the sets that the victim cache holds - the block swaps places with the line it
+        //replaces in its set , returns the line or -1 when the victim cache doesn't have it
+        public int fromVictimCache(int indexInt, long inputTag, int mode) {
+            int entry = victimCache.find((inputTag << tagShift) | ((long) indexInt << offsetBitNum));
+            if (entry == -1) return -1;
+            boolean dirty = victimCache.dirty[entry];
+            victimCache.take(entry);
+            victimCache.hits++;
+            long insertions = victimCache.insertions;
+            int line = missHandle(indexInt, inputTag, mode, 0, false); //a swap , counted under the victim cache
+            if (victimCache.insertions != insertions) victimCache.swaps++;
+            lineDirty[line] = dirty;
+            return line;
+        }
+        //a demand access found the line - returns true on the first use of a prefetched block
+        public boolean demandUse(int line) {
+            if (!linePrefetched[line]) return false;
+            linePrefetched[line] = false;
+            prefetchReport.useful++;
+            if (lineReady[line] > accessClock) prefetchReport.late++;
+            return true;
+        }
+        public void checkPollution(long address) {
+            long block = address >>> offsetBitNum;
+            int slot = (int) (block * 0x9E3779B97F4A7C15L >>> 32) & (pollutionFilter.length - 1);
+            if (pollutionFilter[slot] == block + 1) {
+                prefetchReport.polluting++;
+                pollutionFilter[slot] = 0;
+            }
+        }
+        //brings a block into the cache ahead of use , nothing when it is already there
+        public void prefetch(long address) {
+            if (!inAddressSpace(address)) return;
+            long inputTag = getTag(address);
+            int indexInt = getIndex(address);
+            if (holds(indexInt, inputTag)) return;
+            prefetchReport.issued++;
+            prefetchReport.fetch += (cacheConfig.blockSize / 4);
+            boolean dirty = nextLevel != null && nextLevel.fetchForUpper(address, 0);
+            int line = missHandle(indexInt, inputTag, 1, 0);
+            if (dirty) lineDirty[line] = true;
+            linePrefetched[line] = true;
+            lineReady[line] = accessClock + prefetchLatency;
+        }
+        //a prefetch into a buffer outside the sets - returns the access count at which it arrives ,
+        //-1 when the cache already holds the block
+        public long prefetchToBuffer(long address) {
+            if (holds(getIndex(address), getTag(address))) return -1;
+            prefetchReport.issued++;
+            prefetchReport.fetch += (cacheConfig.blockSize / 4);
+            if (nextLevel != null) nextLevel.fetchForUpper(address, 0);
+            return accessClock + prefetchLatency;
+        }
+        //a demand miss served from a prefetch buffer - the block moves into its set
+        public void fillFromBuffer(long address, int mode, long ready) {
+            missHandle(getIndex(address), getTag(address), mode, 0, false); //serves a hit
+            prefetchReport.useful++;
+            if (ready > accessClock) prefetchReport.late++;
+        }
+        //one word leaves the cache - through the write buffer when there is one
+        public void writeWord(long address) {
+            if (writeBuffer != null) dataReporter.copiesBack += writeBuffer.store(address);
+            else dataReporter.copiesBack++;
+        }
+        public void flushDirty () {
+            if (writeBuffer != null) dataReporter.copiesBack += writeBuffer.drainAll();
+            if (victimCache != null) {
+                for (int entry = 0; entry < victimCache.blocks.length; entry++) {
+                    if (!victimCache.valid[entry] || !victimCache.dirty[entry]) continue;
+                    this.dataReporter.copiesBack += (cacheConfig.blockSize / 4);
+                    victimCache.dirty[entry] = false;
+                    if (nextLevel != null) nextLevel.acceptWriteBack(victimCache.blocks[entry], true, victimCache.types[entry]);
+                }
+            }
+            for (int line = 0; line < lineDirty.length; line++) {
+                if (lineValid[line] && lineDirty[line]) {
+                    this.dataReporter.copiesBack += (cacheConfig.blockSize / 4);
+                    lineDirty[line] = false;
+                    if (nextLevel != null) nextLevel.acceptWriteBack(blockAddress(line / ways, line), true, lineType[line]);
+                }
+            }
+        }
+        //places the tag in its set and returns the line used
+        public int missHandle(int indexInt,long inputTag,int mode,int split){
+            return missHandle(indexInt, inputTag, mode, split, true);
+        }
+        //demandMiss is false for fills that serve a hit , they evict without counting a replace
+        public int missHandle(int indexInt,long inputTag,int mode,int split,boolean demandMiss){
+            int first = indexInt * this.ways;
+            int end = first + this.ways;
+            int victim = -1;
+            for (int line = first; line < end; line++) {
+                if (!lineValid[line]) { //set not full yet
+                    victim = line;
+                    break;
+                }
+            }
+            if (victim == -1) victim = first + replacementPolicy.victim(indexInt);
+            if (prefetcher != null && lineValid[victim]) {
+                if (linePrefetched[victim]) prefetchReport.unused++;
+                if (mode == 1) { //a prefetch evicts the block - a later miss on it is pollution
+                    long block = blockAddress(indexInt, victim) >>> offsetBitNum;
+                    pollutionFilter[(int) (block * 0x9E3779B97F4A7C15L >>> 32) & (pollutionFilter.length - 1)] = block + 1;
+                }
+            }
+            if (prefetcher != null) linePrefetched[victim] = false;
+            if (lineValid[victim]) {
+                //conflict miss - counted for the type of the incoming block , not for a prefetch (mode 1)
+                if (demandMiss && mode == 0) this.dataReporter.replace++;
+                else if (demandMiss && mode == 2) this.instructionReporter.replace++;
+                boolean dirty = lineDirty[victim];
+                if (victimCache != null) { //the block stays at this level in the victim cache
+                    long evicted = blockAddress(indexInt, victim);
+                    lineValid[victim] = false;
+                    if (victimCache.insert(evicted, dirty, lineType[victim]))
+                        evict(victimCache.outBlock, victimCache.outDirty, victimCache.outType);
+                } else if (nextLevel != null || inclusion == INCLUSIVE) {
+                    long evicted = blockAddress(indexInt, victim);
+                    lineValid[victim] = false; //out of the set before the levels around see the eviction
+                    evict(evicted, dirty, lineType[victim]);
+                } else if (dirty) {
+                    dataReporter.copiesBack += (cacheConfig.blockSize / 4);
+                    dataReporter.dirtyEvictions++;
+                }
+            }
+            lineTags[victim] = inputTag;
+            lineValid[victim] = true;
+            lineDirty[victim] = false;
+            lineType[victim] = (byte) (mode == 2 ? 2 : 0); //a prefetched block is data
+            replacementPolicy.onFill(indexInt, victim - first);
+            return victim;
+        }
+        //a block leaves this level - the upper copies go when it is inclusive , then the next level
+        //or memory takes it
+        public void evict(long evicted, boolean dirty, byte type) {
+            if (inclusion == INCLUSIVE) {
+                for (Cache upper : upperLevels) dirty |= upper.backInvalidate(evicted, cacheConfig.blockSize);
+            }
+            if (nextLevel != null && (dirty || nextLevel.inclusion == EXCLUSIVE))
+                nextLevel.acceptWriteBack(evicted, dirty, type);
+            if (dirty) {
+                dataReporter.copiesBack += (cacheConfig.blockSize / 4);
+                dataReporter.dirtyEvictions++;
+            }
+        }
+        public int hitHandle(int indexInt,int line){
+            replacementPolicy.onHit(indexInt, line - indexInt * this.ways);
+            return line;
+        }
+
+        //an upper level missed on the block - returns true when the block goes up dirty ,
+        //which only happens when an exclusive level hands over its copy
+        public boolean fetchForUpper(long address, int mode) {
+            if (inclusion != EXCLUSIVE) {
+                readAddress(address, mode, 0);
+                return false;
+            }
+            int indexInt = getIndex(address);
+            int line = lookUp(indexInt, getTag(address));
+            if (line == -1 && victimCache != null) line = fromVictimCache(indexInt, getTag(address), mode);
+            if (line != -1) { //the block moves up and leaves this level
+                if (mode == 0) this.dataReporter.hit++;
+                else if (mode == 2) this.instructionReporter.hit++;
+                lineValid[line] = false;
+                return lineDirty[line];
+            }
+            if (mode == 0) this.dataReporter.miss++;
+            else if (mode == 2) this.instructionReporter.miss++;
+            this.dataReporter.demandFetch += (cacheConfig.blockSize / 4); //passes through to the upper level
+            return nextLevel != null && nextLevel.fetchForUpper(address, mode);
+        }
+
+        //one word written through , or not allocated , by an upper level
+        public void writeFromUpper(long address) {
+            if (inclusion == EXCLUSIVE && lookUp(getIndex(address), getTag(address)) == -1) {
+                if (nextLevel != null) nextLevel.writeFromUpper(address);
+                else writeWord(address);
+                return;
+            }
+            writeAddress(address);
+        }
+
+        //a block evicted from an upper level - always dirty unless this level is exclusive ,
+        //type is 0 for data and 2 for instruction. Placing it isn't a miss , so no replace is counted
+        public void acceptWriteBack(long address, boolean dirty, byte type) {
+            long inputTag = getTag(address);
+            int indexInt = getIndex(address);
+            int line = lookUp(indexInt, inputTag);
+            if (line == -1 && victimCache != null) line = fromVictimCache(indexInt, inputTag, type);
+            if (inclusion != EXCLUSIVE && cacheConfig.writePolicy.equals("wt")) { //passes the block through
+                if (line != -1) hitHandle(indexInt, line);
+                dataReporter.copiesBack += (cacheConfig.blockSize / 4);
+                if (nextLevel != null) nextLevel.acceptWriteBack(address, true, type);
+                return;
+            }
+            if (line == -1) line = missHandle(indexInt, inputTag, type, 0, false);
+            else hitHandle(indexInt, line);
+            lineDirty[line] |= dirty;
+        }
+
+        //drops every copy of the block from this level and the levels above ,
+        //returns true when one of them was dirty
+        public boolean backInvalidate(long address, int size) {
+            boolean dirty = false;
+            long blockMask = cacheConfig.blockSize - 1;
+            long blocks = ((address & blockMask) + size + blockMask) >>> offsetBitNum; //counted , an end address could wrap
+            long block = address & ~blockMask;
+            for (long i = 0; i < blocks; i++, block += cacheConfig.blockSize) {
+                int indexInt = getIndex(block);
+                int line = lookUp(indexInt, getTag(block));
+                int entry = line == -1 && victimCache != null ? victimCache.find(block) : -1;
+                if (entry != -1) {
+                    if (victimCache.dirty[entry]) {
+                        dataReporter.copiesBack += (cacheConfig.blockSize / 4);
+                        dirty = true;
+                    }
+                    victimCache.take(entry);
+                }
+                if (line == -1) continue;
+                lineValid[line] = false;
+                if (lineDirty[line]) {
+                    dataReporter.copiesBack += (cacheConfig.blockSize / 4);
+                    dirty = true;
+                }
+            }
+            for (Cache upper : upperLevels) dirty |= upper.backInvalidate(address, size);
+            return dirty;
+        }
+
+        //lines as a tag and a byte of valid , dirty and type bits , then counters and replacement state
+        public void save(DataOutput out) throws IOException {
+            out.writeInt(setNum);
+            out.writeInt(ways);
+            byte[] flags = new byte[lineTags.length];
+            for (int line = 0; line < lineTags.length; line++) {
+                flags[line] = (byte) ((lineValid[line] ? 1 : 0) | (lineDirty[line] ? 2 : 0) | (lineType[line] << 2));
+                out.writeLong(lineTags[line]);
+            }
+            out.write(flags);
+            dataReporter.save(out);
+            instructionReporter.save(out);
+            replacementPolicy.save(out);
+            if (writeBuffer != null) writeBuffer.save(out);
+            if (prefetcher != null) {
+                out.writeLong(accessClock);
+                for (int line = 0; line < lineTags.length; line++) {
+                    out.writeBoolean(linePrefetched[line]);
+                    out.writeLong(lineReady[line]);
+                }
+                for (long block : pollutionFilter) out.writeLong(block);
+                prefetchReport.save(out);
+                prefetcher.save(out);
+            }
+            if (victimCache != null) victimCache.save(out);
+            out.writeBoolean(workingSet != null);
+            if (workingSet != null) workingSet.save(out);
+            out.writeBoolean(classifier != null);
+            if (classifier != null) classifier.save(out);
+            out.writeBoolean(timing != null);
+            if (timing != null) timing.save(out);
+        }
+
+        public void load(DataInput in, boolean fork) throws IOException {
+            if (in.readInt() != setNum || in.readInt() != ways) throw new IOException("Checkpoint cache geometry differs");
+            for (int line = 0; line < lineTags.length; line++) lineTags[line] = in.readLong();
+            byte[] flags = new byte[lineTags.length];
+            in.readFully(flags);
+            for (int line = 0; line < lineTags.length; line++) {
+                lineValid[line] = (flags[line] & 1) != 0;
+                lineDirty[line] = (flags[line] & 2) != 0;
+                lineType[line] = (byte) (flags[line] >> 2);
+            }
+            dataReporter.load(in);
+            instructionReporter.load(in);
+            replacementPolicy.load(in);
+            if (writeBuffer != null) writeBuffer.load(in);
+            if (prefetcher != null) {
+                accessClock = in.readLong();
+                for (int line = 0; line < lineTags.length; line++) {
+                    linePrefetched[line] = in.readBoolean();
+                    lineReady[line] = in.readLong();
+                }
+                for (int i = 0; i < pollutionFilter.length; i++) pollutionFilter[i] = in.readLong();
+                prefetchReport.load(in);
+                prefetcher.load(in);
+            }
+            if (victimCache != null) victimCache.load(in);
+            //tracking , classification and timing go on even when the resumed run didn't ask for them
+            if (in.readBoolean()) {
+                if (workingSet == null) workingSet = new WorkingSet(-1);
+                workingSet.load(in);
+            }
+            if (in.readBoolean()) {
+                if (classifier == null) classifier = new MissClassifier(lineTags.length);
+                classifier.load(in);
+            }
+            //a fork keeps the timing of its own run , so one warmed state can be timed several ways
+            if (in.readBoolean()) {
+                TimingModel saved = new TimingModel(1, 0, 0, 1, 0);
+                saved.load(in);
+                if (timing == null) timing = saved;
+                else if (!fork) {
+                    if (!timing.sameSettings(saved)) throw new IOException("Checkpoint timing settings differ from the run timing");
+                    timing = saved;
+                }
+            }
+        }
+    }
+    //victim selection and hit update of a cache - ways are numbered inside their set ,
+    //victim is only asked for when every way of the set is valid
+    public interface ReplacementPolicy {
+        void onHit(int set, int way);
+        void onFill(int set, int way);
+        int victim(int set);
+        void save(DataOutput out) throws IOException;
+        void load(DataInput in) throws IOException;
+
+        static ReplacementPolicy create(String name, int setNum, int ways) {
+            String[] parts = name.split(":"); //random may carry a seed - random:42
+            switch (parts[0]) {
+                case "lru":
+                    return new LruPolicy(setNum, ways);
+                case "fifo":
+                    return new FifoPolicy(setNum, ways);
+                case "random":
+                    return new RandomPolicy(ways, parts.length > 1 ? Long.parseLong(parts[1]) : 1);
+                case "plru":
+                    if (Integer.bitCount(ways) == 1 && ways <= 64) return new TreePlruPolicy(setNum, ways);
+                    System.out.println("Tree PLRU needs a power of two associativity up to 64 , using LRU");
+                    return new LruPolicy(setNum, ways);
+                case "srrip":
+                    return new RripPolicy(setNum, ways, false);
+                case "brrip":
+                    return new RripPolicy(setNum, ways, true);
+                case "lfu":
+                    return new LfuPolicy(setNum, ways);
+                default:
+                    System.out.println("Invalid replacement policy , using LRU");
+                    return new LruPolicy(setNum, ways);
+            }
+        }
+    }
+    //LRU stamp per line - smallest stamp in a set is the least recently used
+    public static class LruPolicy implements ReplacementPolicy {
+        int ways;
+        long[] lastUse;
+        long useClock;
+
+        public LruPolicy(int setNum, int ways) {
+            this.ways = ways;
+            this.lastUse = new long[setNum * ways];
+        }
+
+        public void onHit(int set, int way) {
+            lastUse[set * ways + way] = ++useClock;
+        }
+
+        public void onFill(int set, int way) {
+            lastUse[set * ways + way] = ++useClock;
+        }
+
+        public int victim(int set) {
+            int first = set * ways;
+            int victim = 0;
+            for (int way = 1; way < ways; way++) {
+                if (lastUse[first + way] < lastUse[first + victim]) victim = way;
+            }
+            return victim;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(useClock);
+            for (long stamp : lastUse) out.writeLong(stamp);
+        }
+
+        public void load(DataInput in) throws IOException {
+            useClock = in.readLong();
+            for (int i = 0; i < lastUse.length; i++) lastUse[i] = in.readLong();
+        }
+    }
+    //fill stamp per line - hits don't change the order
+    public static class FifoPolicy implements ReplacementPolicy {
+        int ways;
+        long[] filled;
+        long fillClock;
+
+        public FifoPolicy(int setNum, int ways) {
+            this.ways = ways;
+            this.filled = new long[setNum * ways];
+        }
+
+        public void onHit(int set, int way) {}
+
+        public void onFill(int set, int way) {
+            filled[set * ways + way] = ++fillClock;
+        }
+
+        public int victim(int set) {
+            int first = set * ways;
+            int victim = 0;
+            for (int way = 1; way < ways; way++) {
+                if (filled[first + way] < filled[first + victim]) victim = way;
+            }
+            return victim;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(fillClock);
+            for (long stamp : filled) out.writeLong(stamp);
+        }
+
+        public void load(DataInput in) throws IOException {
+            fillClock = in.readLong();
+            for (int i = 0; i < filled.length; i++) filled[i] = in.readLong();
+        }
+    }
+    //xorshift generator so that runs with the same seed evict the same ways
+    public static class RandomPolicy implements ReplacementPolicy {
+        int ways;
+        long state;
+
+        public RandomPolicy(int ways, long seed) {
+            this.ways = ways;
+            this.state = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+        }
+
+        public void onHit(int set, int way) {}
+
+        public void onFill(int set, int way) {}
+
+        public int victim(int set) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            return (int) ((state >>> 1) % ways);
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(state);
+        }
+
+        public void load(DataInput in) throws IOException {
+            state = in.readLong();
+        }
+    }
+    //binary tree of ways-1 bits per set , node n has children 2n and 2n+1 and its bit
+    //points to the half holding the next victim
+    public static class TreePlruPolicy implements ReplacementPolicy {
+        int ways;
+        int levels;
+        long[] treeBits;
+
+        public TreePlruPolicy(int setNum, int ways) {
+            this.ways = ways;
+            this.levels = Integer.numberOfTrailingZeros(ways);
+            this.treeBits = new long[setNum];
+        }
+
+        private void touch(int set, int way) {
+            long bits = treeBits[set];
+            int node = 1;
+            for (int level = levels - 1; level >= 0; level--) {
+                int direction = (way >>> level) & 1;
+                if (direction == 0) bits |= 1L << node; //point away from the touched way
+                else bits &= ~(1L << node);
+                node = node * 2 + direction;
+            }
+            treeBits[set] = bits;
+        }
+
+        public void onHit(int set, int way) {
+            touch(set, way);
+        }
+
+        public void onFill(int set, int way) {
+            touch(set, way);
+        }
+
+        public int victim(int set) {
+            long bits = treeBits[set];
+            int node = 1;
+            while (node < ways) node = node * 2 + (int) ((bits >>> node) & 1);
+            return node - ways;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            for (long bits : treeBits) out.writeLong(bits);
+        }
+
+        public void load(DataInput in) throws IOException {
+            for (int i = 0; i < treeBits.length; i++) treeBits[i] = in.readLong();
+        }
+    }
+    //re-reference prediction with 2 bit values - SRRIP fills with a long prediction ,
+    //BRRIP fills with a distant prediction except one fill out of BIMODAL_THROTTLE
+    public static class RripPolicy implements ReplacementPolicy {
+        static final byte DISTANT = 3;
+        static final byte LONG = 2;
+        static final int BIMODAL_THROTTLE = 32;
+        int ways;
+        byte[] prediction;
+        boolean bimodal;
+        int fills;
+
+        public RripPolicy(int setNum, int ways, boolean bimodal) {
+            this.ways = ways;
+            this.prediction = new byte[setNum * ways];
+            this.bimodal = bimodal;
+        }
+
+        public void onHit(int set, int way) {
+            prediction[set * ways + way] = 0;
+        }
+
+        public void onFill(int set, int way) {
+            byte value = LONG;
+            if (bimodal && ++fills % BIMODAL_THROTTLE != 0) value = DISTANT;
+            prediction[set * ways + way] = value;
+        }
+
+        public int victim(int set) {
+            int first = set * ways;
+            int oldest = 0;
+            for (int way = 0; way < ways; way++) {
+                if (prediction[first + way] == DISTANT) return way;
+                if (prediction[first + way] > prediction[first + oldest]) oldest = way;
+            }
+            //age the whole set until the oldest line becomes distant
+            int age = DISTANT - prediction[first + oldest];
+            for (int way = 0; way < ways; way++) prediction[first + way] += age;
+            return oldest;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeInt(fills);
+            out.write(prediction);
+        }
+
+        public void load(DataInput in) throws IOException {
+            fills = in.readInt();
+            in.readFully(prediction);
+        }
+    }
+    //use count per line , ties go to the lowest way
+    public static class LfuPolicy implements ReplacementPolicy {
+        int ways;
+        int[] uses;
+
+        public LfuPolicy(int setNum, int ways) {
+            this.ways = ways;
+            this.uses = new int[setNum * ways];
+        }
+
+        public void onHit(int set, int way) {
+            int line = set * ways + way;
+            if (uses[line] != Integer.MAX_VALUE) uses[line]++;
+        }
+
+        public void onFill(int set, int way) {
+            uses[set * ways + way] = 1;
+        }
+
+        public int victim(int set) {
+            int first = set * ways;
+            int victim = 0;
+            for (int way = 1; way < ways; way++) {
+                if (uses[first + way] < uses[first + victim]) victim = way;
+            }
+            return victim;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            for (int count : uses) out.writeInt(count);
+        }
+
+        public void load(DataInput in) throws IOException {
+            for (int i = 0; i < uses.length; i++) uses[i] = in.readInt();
+        }
+    }
+    //hardware prefetcher of a cache - sees every demand access and issues prefetches through
+    //Cache.prefetch , or keeps the blocks in buffers of its own and hands them over in supply
+    public interface Prefetcher {
+        //trigger is true on a miss or on the first use of a prefetched block
+        void onAccess(Cache cache, long address, boolean trigger);
+        //a demand read missed the sets - true when the prefetcher had the block
+        default boolean supply(Cache cache, long address, int mode) {
+            return false;
+        }
+        void save(DataOutput out) throws IOException;
+        void load(DataInput in) throws IOException;
+
+        //"nextline:degree" , "stride:degree:entries" or "stream:buffers:depth" , with the latency
+        //after @ - nextline:1@20 , null for none
+        static Prefetcher create(String spec) {
+            if (spec.equals("none")) return null;
+            String[] prefetch = spec.split("@");
+            String[] parts = prefetch[0].split(":");
+            try {
+                if (prefetch.length <= 2 && latency(spec) >= 0) switch (parts[0]) {
+                    case "nextline":
+                        return new NextLinePrefetcher(parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+                    case "stride":
+                        return new StridePrefetcher(parts.length > 1 ? Integer.parseInt(parts[1]) : 2,
+                                parts.length > 2 ? Integer.parseInt(parts[2]) : 16);
+                    case "stream":
+                        return new StreamBufferPrefetcher(parts.length > 1 ? Integer.parseInt(parts[1]) : 4,
+                                parts.length > 2 ? Integer.parseInt(parts[2]) : 4);
+                }
+            } catch (NumberFormatException e) {
+                //falls through to the message
+            }
+            System.out.println("Invalid prefetcher , prefetching nothing");
+            return null;
+        }
+
+        //accesses between issuing a prefetch and its block arriving
+        static int latency(String spec) {
+            String[] prefetch = spec.split("@");
+            return prefetch.length > 1 ? Integer.parseInt(prefetch[1]) : 0;
+        }
+    }
+    //tagged next line - the blocks after a miss , or after the first use of a prefetched block
+    public static class NextLinePrefetcher implements Prefetcher {
+        int degree;
+
+        public NextLinePrefetcher(int degree) {
+            this.degree = degree;
+        }
+
+        public void onAccess(Cache cache, long address, boolean trigger) {
+            if (!trigger) return;
+            long block = address >>> cache.offsetBitNum;
+            for (int i = 1; i <= degree; i++) cache.prefetch((block + i) << cache.offsetBitNum);
+        }
+
+        public void save(DataOutput out) {}
+
+        public void load(DataInput in) {}
+    }
+    //stride per 4KB region instead of per instruction , since traces carry no PC. A region that
+    //repeats its block stride twice gets the next degree blocks along the stride
+    public static class StridePrefetcher implements Prefetcher {
+        static final int REGION_SHIFT = 12;
+        int degree;
+        long[] regions; //region number + 1 , 0 when free
+        long[] lastBlock;
+        long[] stride;
+        int[] confidence;
+        long[] lastUse; //LRU among the entries
+        long clock;
+
+        public StridePrefetcher(int degree, int entries) {
+            this.degree = degree;
+            this.regions = new long[entries];
+            this.lastBlock = new long[entries];
+            this.stride = new long[entries];
+            this.confidence = new int[entries];
+            this.lastUse = new long[entries];
+        }
+
+        public void onAccess(Cache cache, long address, boolean trigger) {
+            long region = (address >>> REGION_SHIFT) + 1;
+            long block = address >>> cache.offsetBitNum;
+            int entry = 0;
+            for (int i = 0; i < regions.length; i++) {
+                if (regions[i] == region) {
+                    entry = i;
+                    break;
+                }
+                if (lastUse[i] < lastUse[entry]) entry = i;
+            }
+            lastUse[entry] = ++clock;
+            if (regions[entry] != region) { //new region takes the least recently used entry
+                regions[entry] = region;
+                lastBlock[entry] = block;
+                stride[entry] = 0;
+                confidence[entry] = 0;
+                return;
+            }
+            long newStride = block - lastBlock[entry];
+            if (newStride == 0) return;
+            lastBlock[entry] = block;
+            if (newStride == stride[entry]) {
+                if (confidence[entry] < 3) confidence[entry]++;
+            } else if (confidence[entry] > 0) {
+                confidence[entry]--;
+            } else {
+                stride[entry] = newStride;
+            }
+            if (confidence[entry] >= 2) {
+                for (int i = 1; i <= degree; i++) cache.prefetch((block + stride[entry] * i) << cache.offsetBitNum);
+            }
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(clock);
+            for (int i = 0; i < regions.length; i++) {
+                out.writeLong(regions[i]);
+                out.writeLong(lastBlock[i]);
+                out.writeLong(stride[i]);
+                out.writeInt(confidence[i]);
+                out.writeLong(lastUse[i]);
+            }
+        }
+
+        public void load(DataInput in) throws IOException {
+            clock = in.readLong();
+            for (int i = 0; i < regions.length; i++) {
+                regions[i] = in.readLong();
+                lastBlock[i] = in.readLong();
+                stride[i] = in.readLong();
+                confidence[i] = in.readInt();
+                lastUse[i] = in.readLong();
+            }
+        }
+    }
+    //sequential stream buffers - a read miss that no buffer holds restarts the least recently used
+    //buffer on the blocks after it , a miss found in a buffer moves the block into the cache and
+    //the buffer fetches one more block for each one it gave up. Prefetched blocks never evict lines
+    public static class StreamBufferPrefetcher implements Prefetcher {
+        int depth;
+        long[][] blocks; //oldest first
+        long[][] ready;
+        int[] count;
+        long[] lastUse;
+        long clock;
+
+        public StreamBufferPrefetcher(int buffers, int depth) {
+            this.depth = depth;
+            this.blocks = new long[buffers][depth];
+            this.ready = new long[buffers][depth];
+            this.count = new int[buffers];
+            this.lastUse = new long[buffers];
+        }
+
+        public void onAccess(Cache cache, long address, boolean trigger) {}
+
+        public boolean supply(Cache cache, long address, int mode) {
+            long block = address >>> cache.offsetBitNum;
+            int oldest = 0;
+            for (int buffer = 0; buffer < blocks.length; buffer++) {
+                for (int i = 0; i < count[buffer]; i++) {
+                    if (blocks[buffer][i] != block) continue;
+                    cache.fillFromBuffer(address, mode, ready[buffer][i]);
+                    cache.prefetchReport.unused += i; //skipped over
+                    int left = count[buffer] - i - 1;
+                    System.arraycopy(blocks[buffer], i + 1, blocks[buffer], 0, left);
+                    System.arraycopy(ready[buffer], i + 1, ready[buffer], 0, left);
+                    count[buffer] = left;
+                    long next = left > 0 ? blocks[buffer][left - 1] + 1 : block + 1;
+                    fill(cache, buffer, next);
+                    lastUse[buffer] = ++clock;
+                    return true;
+                }
+                if (lastUse[buffer] < lastUse[oldest]) oldest = buffer;
+            }
+            cache.prefetchReport.unused += count[oldest];
+            count[oldest] = 0;
+            fill(cache, oldest, block + 1);
+            lastUse[oldest] = ++clock;
+            return false;
+        }
+
+        private void fill(Cache cache, int buffer, long next) {
+            int held = 0;
+            while (count[buffer] < depth) {
+                long address = next << cache.offsetBitNum;
+                if (!cache.inAddressSpace(address)) return;
+                long arrives = cache.prefetchToBuffer(address);
+                next++;
+                if (arrives == -1) { //the cache has it - the stream goes on past it , a buffer's worth at most
+                    if (++held == depth) return;
+                    continue;
+                }
+                blocks[buffer][count[buffer]] = next - 1;
+                ready[buffer][count[buffer]] = arrives;
+                count[buffer]++;
+            }
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(clock);
+            for (int buffer = 0; buffer < blocks.length; buffer++) {
+                out.writeInt(count[buffer]);
+                out.writeLong(lastUse[buffer]);
+                for (int i = 0; i < count[buffer]; i++) {
+                    out.writeLong(blocks[buffer][i]);
+                    out.writeLong(ready[buffer][i]);
+                }
+            }
+        }
+
+        public void load(DataInput in) throws IOException {
+            clock = in.readLong();
+            for (int buffer = 0; buffer < blocks.length; buffer++) {
+                count[buffer] = in.readInt();
+                lastUse[buffer] = in.readLong();
+                for (int i = 0; i < count[buffer]; i++) {
+                    blocks[buffer][i] = in.readLong();
+                    ready[buffer][i] = in.readLong();
+                }
+            }
+        }
+    }
+    //set of block numbers in the roaring layout - the bits above the low 16 pick a chunk of 65536
+    //blocks , and a chunk holds its low bits in a sorted char array while it has up to 4096 of them
+    //and in a 1024 long bitmap after that. Sparse chunks cost 2 bytes a block , dense ones a bit a
+    //block , and a chunk that fills up drops its bitmap - the whole 32 bit block range fits in
+    //512MB at worst and a real trace touches a small part of it
+    public static class BlockSet {
+        static final int ARRAY_LIMIT = 4096;
+        static final int CHUNK_BLOCKS = 1 << 16;
+        LongLongMap chunkIndex = new LongLongMap(64); //high bits to chunk number
+        long[] chunkKeys = new long[16];
+        char[][] arrays = new char[16][]; //null once the chunk is a bitmap
+        long[][] bitmaps = new long[16][];
+        int[] counts = new int[16];
+        int chunks;
+        long size;
+
+        private int chunk(long high) {
+            long found = chunkIndex.get(high);
+            if (found != -1) return (int) found;
+            if (chunks == chunkKeys.length) {
+                chunkKeys = Arrays.copyOf(chunkKeys, chunks * 2);
+                arrays = Arrays.copyOf(arrays, chunks * 2);
+                bitmaps = Arrays.copyOf(bitmaps, chunks * 2);
+                counts = Arrays.copyOf(counts, chunks * 2);
+            }
+            chunkKeys[chunks] = high;
+            arrays[chunks] = new char[4];
+            chunkIndex.put(high, chunks);
+            return chunks++;
+        }
+
+        //true when the block wasn't in the set yet
+        public boolean add(long block) {
+            int chunk = chunk(block >>> 16);
+            char low = (char) block;
+            if (counts[chunk] == CHUNK_BLOCKS) return false;
+            long[] bitmap = bitmaps[chunk];
+            if (bitmap != null) {
+                long bit = 1L << low;
+                if ((bitmap[low >>> 6] & bit) != 0) return false;
+                bitmap[low >>> 6] |= bit;
+                if (++counts[chunk] == CHUNK_BLOCKS) bitmaps[chunk] = null; //full
+                size++;
+                return true;
+            }
+            char[] array = arrays[chunk];
+            int count = counts[chunk];
+            int at = Arrays.binarySearch(array, 0, count, low);
+            if (at >= 0) return false;
+            at = -at - 1;
+            if (count == ARRAY_LIMIT) { //too many for the array - becomes a bitmap
+                bitmap = new long[CHUNK_BLOCKS / 64];
+                for (int i = 0; i < count; i++) bitmap[array[i] >>> 6] |= 1L << array[i];
+                bitmap[low >>> 6] |= 1L << low;
+                bitmaps[chunk] = bitmap;
+                arrays[chunk] = null;
+            } else {
+                if (count == array.length) array = arrays[chunk] = Arrays.copyOf(array, Math.min(count * 2, ARRAY_LIMIT));
+                System.arraycopy(array, at, array, at + 1, count - at);
+                array[at] = low;
+            }
+            counts[chunk]++;
+            size++;
+            return true;
+        }
+
+        public boolean contains(long block) {
+            long found = chunkIndex.get(block >>> 16);
+            if (found == -1) return false;
+            int chunk = (int) found;
+            char low = (char) block;
+            if (counts[chunk] == CHUNK_BLOCKS) return true;
+            if (bitmaps[chunk] != null) return (bitmaps[chunk][low >>> 6] & (1L << low)) != 0;
+            return Arrays.binarySearch(arrays[chunk], 0, counts[chunk], low) >= 0;
+        }
+
+        //bytes held by the chunks and the index
+        public long memoryBytes() {
+            long bytes = chunkIndex.keys.length * 16L + chunkKeys.length * 36L;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                if (bitmaps[chunk] != null) bytes += bitmaps[chunk].length * 8L;
+                else if (arrays[chunk] != null) bytes += arrays[chunk].length * 2L;
+            }
+            return bytes;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeInt(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                out.writeLong(chunkKeys[chunk]);
+                out.writeInt(counts[chunk]);
+                if (bitmaps[chunk] != null) {
+                    for (long word : bitmaps[chunk]) out.writeLong(word);
+                } else if (arrays[chunk] != null) {
+                    for (int i = 0; i < counts[chunk]; i++) out.writeChar(arrays[chunk][i]);
+                }
+            }
+        }
+
+        public void load(DataInput in) throws IOException {
+            int saved = in.readInt();
+            for (int i = 0; i < saved; i++) {
+                int chunk = chunk(in.readLong());
+                int count = in.readInt();
+                counts[chunk] = count;
+                size += count;
+                if (count == CHUNK_BLOCKS) {
+                    arrays[chunk] = null;
+                } else if (count > ARRAY_LIMIT) {
+                    arrays[chunk] = null;
+                    bitmaps[chunk] = new long[CHUNK_BLOCKS / 64];
+                    for (int word = 0; word < bitmaps[chunk].length; word++) bitmaps[chunk][word] = in.readLong();
+                } else {
+                    arrays[chunk] = new char[Math.max(count, 4)];
+                    for (int j = 0; j < count; j++) arrays[chunk][j] = in.readChar();
+                }
+            }
+        }
+    }
+    //blocks a cache has ever accessed - gives the first touch of every access , the unique blocks
+    //so far and , every sampleEvery accesses , a sample of their growth
+    public static class WorkingSet {
+        BlockSet touched = new BlockSet();
+        long sampleEvery; //0 for no samples , -1 when only the classifier needs the blocks and nothing is reported
+        long accesses;
+        long[] firstTouchMisses = new long[2]; //0 for data , 1 for instruction
+        long[] samples = new long[16]; //unique blocks after each sampleEvery accesses
+        int sampleCount;
+
+        public WorkingSet(long sampleEvery) {
+            this.sampleEvery = sampleEvery;
+        }
+
+        //true on the first access to the block
+        public boolean touch(long block, boolean miss, int mode) {
+            boolean first = touched.add(block);
+            if (first && miss) firstTouchMisses[mode == 2 ? 1 : 0]++;
+            if (++accesses == (sampleCount + 1) * sampleEvery) {
+                if (sampleCount == samples.length) samples = Arrays.copyOf(samples, sampleCount * 2);
+                samples[sampleCount++] = touched.size;
+            }
+            return first;
+        }
+
+        public void resetStatistics() {
+            accesses = 0;
+            Arrays.fill(firstTouchMisses, 0);
+            sampleCount = 0;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            touched.save(out);
+            out.writeLong(sampleEvery);
+            out.writeLong(accesses);
+            out.writeLong(firstTouchMisses[0]);
+            out.writeLong(firstTouchMisses[1]);
+            out.writeInt(sampleCount);
+            for (int i = 0; i < sampleCount; i++) out.writeLong(samples[i]);
+        }
+
+        public void load(DataInput in) throws IOException {
+            touched.load(in);
+            sampleEvery = in.readLong();
+            accesses = in.readLong();
+            firstTouchMisses[0] = in.readLong();
+            firstTouchMisses[1] = in.readLong();
+            sampleCount = in.readInt();
+            samples = new long[Math.max(sampleCount, 16)];
+            for (int i = 0; i < sampleCount; i++) samples[i] = in.readLong();
+        }
+    }
+    //cycle-approximate timing of the accesses to a cache. One access issues a cycle and takes the
+    //hit latency , a miss that fetches a block adds the miss penalty and an access that sends data
+    //to memory adds the write back cost. The sets are interleaved over banks that each take one access per hit
+    //latency. With no MSHRs a miss blocks the accesses behind it until its block arrives , with
+    //MSHRs up to that many misses overlap and only waiting for a bank , a free MSHR or a write back
+    //stalls the accesses behind - a hit on a block still on its way waits for it without stalling
+    public static class TimingModel {
+        int hitLatency;
+        int missPenalty;
+        int writeBackCost;
+        long[] bankFree; //cycle at which each bank takes its next access
+        long[] mshrDone; //cycle at which the block of each MSHR arrives
+        long[] mshrBlock;
+        long clock; //cycle the next access issues at
+        long[] accesses = new long[2]; //0 for data , 1 for instruction
+        long[] latency = new long[2]; //cycles from issue to the data for all the accesses
+        long[] stalls = new long[2]; //cycles the accesses held up the ones behind
+        long bankConflicts;
+        long mshrFull;
+
+        public TimingModel(int hitLatency, int missPenalty, int writeBackCost, int banks, int mshrs) {
+            this.hitLatency = hitLatency;
+            this.missPenalty = missPenalty;
+            this.writeBackCost = writeBackCost;
+            this.bankFree = new long[banks];
+            this.mshrDone = new long[mshrs];
+            this.mshrBlock = new long[mshrs];
+        }
+
+        //hit:miss:writeback:banks:mshrs - 1:100:20:4:8 , 0 MSHRs for a blocking cache
+        static TimingModel create(String spec) {
+            String[] parts = spec.split(":");
+            try {
+                if (parts.length == 5) {
+                    int hit = Integer.parseInt(parts[0]);
+                    int miss = Integer.parseInt(parts[1]);
+                    int writeBack = Integer.parseInt(parts[2]);
+                    int banks = Integer.parseInt(parts[3]);
+                    int mshrs = Integer.parseInt(parts[4]);
+                    if (hit > 0 && miss >= 0 && writeBack >= 0 && banks > 0 && mshrs >= 0)
+                        return new TimingModel(hit, miss, writeBack, banks, mshrs);
+                }
+            } catch (NumberFormatException e) {
+                //falls through to the message
+            }
+            System.out.println("Invalid timing , using none");
+            return null;
+        }
+
+        public void access(int index, long block, boolean fetched, boolean toMemory, int type) {
+            int bank = index % bankFree.length;
+            long start = clock;
+            if (bankFree[bank] > start) {
+                bankConflicts++;
+                start = bankFree[bank];
+            }
+            long done;
+            if (fetched && mshrDone.length > 0) {
+                int mshr = 0;
+                for (int i = 1; i < mshrDone.length; i++) if (mshrDone[i] < mshrDone[mshr]) mshr = i;
+                if (mshrDone[mshr] > start) {
+                    mshrFull++;
+                    start = mshrDone[mshr];
+                }
+                done = start + hitLatency + missPenalty;
+                mshrDone[mshr] = done;
+                mshrBlock[mshr] = block;
+            } else {
+                done = start + hitLatency + (fetched ? missPenalty : 0);
+                for (int i = 0; i < mshrDone.length; i++) {
+                    if (mshrBlock[i] == block && mshrDone[i] > done) done = mshrDone[i];
+                }
+            }
+            long stall = start - clock;
+            if (fetched && mshrDone.length == 0) stall += missPenalty;
+            if (toMemory) {
+                done += writeBackCost;
+                stall += writeBackCost;
+            }
+            bankFree[bank] = start + hitLatency;
+            accesses[type]++;
+            latency[type] += done - clock;
+            stalls[type] += stall;
+            clock += 1 + stall;
+        }
+
+        public double amat(int type) {
+            return accesses[type] == 0 ? 0 : (double) latency[type] / accesses[type];
+        }
+
+        public void resetStatistics() {
+            clock = 0;
+            Arrays.fill(bankFree, 0);
+            Arrays.fill(mshrDone, 0);
+            Arrays.fill(accesses, 0);
+            Arrays.fill(latency, 0);
+            Arrays.fill(stalls, 0);
+            bankConflicts = 0;
+            mshrFull = 0;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeInt(hitLatency);
+            out.writeInt(missPenalty);
+            out.writeInt(writeBackCost);
+            out.writeInt(bankFree.length);
+            out.writeInt(mshrDone.length);
+            for (long free : bankFree) out.writeLong(free);
+            for (int i = 0; i < mshrDone.length; i++) {
+                out.writeLong(mshrDone[i]);
+                out.writeLong(mshrBlock[i]);
+            }
+            out.writeLong(clock);
+            for (int type = 0; type < 2; type++) {
+                out.writeLong(accesses[type]);
+                out.writeLong(latency[type]);
+                out.writeLong(stalls[type]);
+            }
+            out.writeLong(bankConflicts);
+            out.writeLong(mshrFull);
+        }
+
+        public boolean sameSettings(TimingModel other) {
+            return hitLatency == other.hitLatency && missPenalty == other.missPenalty && writeBackCost == other.writeBackCost
+                    && bankFree.length == other.bankFree.length && mshrDone.length == other.mshrDone.length;
+        }
+
+        public void load(DataInput in) throws IOException {
+            hitLatency = in.readInt();
+            missPenalty = in.readInt();
+            writeBackCost = in.readInt();
+            bankFree = new long[in.readInt()];
+            mshrDone = new long[in.readInt()];
+            mshrBlock = new long[mshrDone.length];
+            for (int bank = 0; bank < bankFree.length; bank++) bankFree[bank] = in.readLong();
+            for (int i = 0; i < mshrDone.length; i++) {
+                mshrDone[i] = in.readLong();
+                mshrBlock[i] = in.readLong();
+            }
+            clock = in.readLong();
+            for (int type = 0; type < 2; type++) {
+                accesses[type] = in.readLong();
+                latency[type] = in.readLong();
+                stalls[type] = in.readLong();
+            }
+            bankConflicts = in.readLong();
+            mshrFull = in.readLong();
+        }
+    }
+    //small fully associative LRU buffer behind the sets - it holds the blocks the sets evict until
+    //it needs room , and a miss it holds swaps the block back into its set
+    public static class VictimCache {
+        long[] blocks; //block addresses
+        boolean[] valid;
+        boolean[] dirty;
+        byte[] types; //0 for data , 2 for instruction
+        long[] lastUse;
+        long clock;
+        long outBlock; //block pushed out by the last insert
+        boolean outDirty;
+        byte outType;
+        //statistics
+        long hits;
+        long swaps; //hits that sent a block of the set the other way
+        long insertions;
+        long evictions; //blocks pushed out to the next level or memory
+
+        public VictimCache(int entries) {
+            blocks = new long[entries];
+            valid = new boolean[entries];
+            dirty = new boolean[entries];
+            types = new byte[entries];
+            lastUse = new long[entries];
+        }
+
+        //number of entries , null for none
+        static VictimCache create(String spec) {
+            if (spec.equals("none") || spec.equals("0")) return null;
+            try {
+                int entries = Integer.parseInt(spec);
+                if (entries > 0) return new VictimCache(entries);
+            } catch (NumberFormatException e) {
+                //falls through to the message
+            }
+            System.out.println("Invalid victim cache , using none");
+            return null;
+        }
+
+        //entry holding the block , -1 when missing
+        public int find(long block) {
+            for (int entry = 0; entry < blocks.length; entry++) {
+                if (valid[entry] && blocks[entry] == block) return entry;
+            }
+            return -1;
+        }
+
+        public void take(int entry) {
+            valid[entry] = false;
+        }
+
+        //true when the least recently used block had to leave - it is in outBlock , outDirty and outType
+        public boolean insert(long block, boolean blockDirty, byte type) {
+            insertions++;
+            int entry = 0;
+            for (int i = 0; i < blocks.length; i++) {
+                if (!valid[i]) {
+                    entry = i;
+                    break;
+                }
+                if (lastUse[i] < lastUse[entry]) entry = i;
+            }
+            boolean out = valid[entry];
+            if (out) {
+                outBlock = blocks[entry];
+                outDirty = dirty[entry];
+                outType = types[entry];
+                evictions++;
+            }
+            blocks[entry] = block;
+            valid[entry] = true;
+            dirty[entry] = blockDirty;
+            types[entry] = type;
+            lastUse[entry] = ++clock;
+            return out;
+        }
+
+        public void resetStatistics() {
+            hits = swaps = insertions = evictions = 0;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeLong(clock);
+            for (int entry = 0; entry < blocks.length; entry++) {
+                out.writeLong(blocks[entry]);
+                out.writeBoolean(valid[entry]);
+                out.writeBoolean(dirty[entry]);
+                out.writeByte(types[entry]);
+                out.writeLong(lastUse[entry]);
+            }
+            out.writeLong(hits);
+            out.writeLong(swaps);
+            out.writeLong(insertions);
+            out.writeLong(evictions);
+        }
+
+        public void load(DataInput in) throws IOException {
+            clock = in.readLong();
+            for (int entry = 0; entry < blocks.length; entry++) {
+                blocks[entry] = in.readLong();
+                valid[entry] = in.readBoolean();
+                dirty[entry] = in.readBoolean();
+                types[entry] = in.readByte();
+                lastUse[entry] = in.readLong();
+            }
+            hits = in.readLong();
+            swaps = in.readLong();
+            insertions = in.readLong();
+            evictions = in.readLong();
+        }
+    }
+    //sorts the misses of a cache into compulsory , capacity and conflict. A fully associative LRU
+    //shadow with as many lines as the cache sees every access - a first touch of the block (told
+    //by the working set of the cache) is compulsory , a miss the shadow misses too is capacity ,
+    //a miss the shadow hits is conflict.
+    //The shadow is a hash map from block to node over an intrusive LRU list , so an access costs
+    //a lookup and a few links whatever the size
+    public static class MissClassifier {
+        LongLongMap shadowNodes = new LongLongMap(1024); //block to shadow node
+        long[] nodeBlock;
+        int[] previous; //towards the most recently used
+        int[] next; //towards the least recently used
+        int head = -1; //most recently used
+        int tail = -1;
+        int used;
+        //by type - 0 for data , 1 for instruction
+        long[] compulsory = new long[2];
+        long[] capacity = new long[2];
+        long[] conflict = new long[2];
+
+        public MissClassifier(int lines) {
+            nodeBlock = new long[lines];
+            previous = new int[lines];
+            next = new int[lines];
+        }
+
+        //every demand access goes through the shadow , misses of the cache get their class
+        public void classify(long block, boolean miss, int mode, boolean firstTouch) {
+            int type = mode == 2 ? 1 : 0;
+            long node = shadowNodes.get(block);
+            if (node >= 0) {
+                if (miss) conflict[type]++;
+                moveToHead((int) node);
+                return;
+            }
+            if (miss) {
+                if (firstTouch) compulsory[type]++;
+                else capacity[type]++;
+            }
+            int free;
+            if (used < nodeBlock.length) {
+                free = used++;
+            } else { //the least recently used block leaves the shadow
+                free = tail;
+                unlink(free);
+                shadowNodes.remove(nodeBlock[free]);
+            }
+            nodeBlock[free] = block;
+            shadowNodes.put(block, free);
+            linkAtHead(free);
+        }
+
+        private void unlink(int node) {
+            if (previous[node] != -1) next[previous[node]] = next[node];
+            else head = next[node];
+            if (next[node] != -1) previous[next[node]] = previous[node];
+            else tail = previous[node];
+        }
+
+        private void linkAtHead(int node) {
+            previous[node] = -1;
+            next[node] = head;
+            if (head != -1) previous[head] = node;
+            head = node;
+            if (tail == -1) tail = node;
+        }
+
+        private void moveToHead(int node) {
+            if (node == head) return;
+            unlink(node);
+            linkAtHead(node);
+        }
+
+        public void resetStatistics() {
+            Arrays.fill(compulsory, 0);
+            Arrays.fill(capacity, 0);
+            Arrays.fill(conflict, 0);
+        }
+
+        //the shadow from the least recently used block
+        public void save(DataOutput out) throws IOException {
+            out.writeInt(used);
+            for (int node = tail; node != -1; node = previous[node]) out.writeLong(nodeBlock[node]);
+            for (int type = 0; type < 2; type++) {
+                out.writeLong(compulsory[type]);
+                out.writeLong(capacity[type]);
+                out.writeLong(conflict[type]);
+            }
+        }
+
+        public void load(DataInput in) throws IOException {
+            int blocks = in.readInt();
+            for (int i = 0; i < blocks; i++) {
+                long block = in.readLong();
+                int node = used++;
+                nodeBlock[node] = block;
+                shadowNodes.put(block, node);
+                linkAtHead(node);
+            }
+            for (int type = 0; type < 2; type++) {
+                compulsory[type] = in.readLong();
+                capacity[type] = in.readLong();
+                conflict[type] = in.readLong();
+            }
+        }
+    }
+    //coalescing write buffer between a cache and memory - word stores to the same entry are merged
+    //and only the distinct words of an entry are written when it drains. Drain policies:
+    //full - an entry leaves only when a new one needs its place ,
+    //every:N - also one entry leaves every N accesses of the cache , like a memory port that is free
+    //every N accesses
+    public static class WriteBuffer {
+        int entries;
+        int granularity; //bytes covered by one entry
+        int granularityShift;
+        int drainEvery; //0 when entries only leave on a full buffer
+        long[] blocks; //circular , oldest at head
+        long[] wordMasks; //words written in each entry
+        int head;
+        int count;
+        long clock;
+        //statistics
+        long stores;
+        long merges;
+        long stalls; //stores that found the buffer full
+        long drains;
+
+        public WriteBuffer(int entries, int granularity, int drainEvery) {
+            this.entries = entries;
+            this.granularity = granularity;
+            this.granularityShift = Integer.numberOfTrailingZeros(granularity);
+            this.drainEvery = drainEvery;
+            this.blocks = new long[entries];
+            this.wordMasks = new long[entries];
+        }
+
+        //"entries:granularity:full" or "entries:granularity:every:N" , null for none
+        static WriteBuffer create(String spec) {
+            if (spec.equals("none")) return null;
+            String[] parts = spec.split(":");
+            try {
+                int entries = Integer.parseInt(parts[0]);
+                int granularity = Integer.parseInt(parts[1]);
+                if (entries > 0 && granularity >= 4 && granularity <= 256 && Integer.bitCount(granularity) == 1) {
+                    if (parts.length == 3 && parts[2].equals("full")) return new WriteBuffer(entries, granularity, 0);
+                    if (parts.length == 4 && parts[2].equals("every") && Integer.parseInt(parts[3]) > 0)
+                        return new WriteBuffer(entries, granularity, Integer.parseInt(parts[3]));
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                //falls through to the message
+            }
+            System.out.println("Invalid write buffer , writing through without one");
+            return null;
+        }
+
+        //buffers one word , returns the words written to memory to make room
+        public long store(long address) {
+            stores++;
+            long block = address >>> granularityShift; //unsigned - addresses use all 64 bits
+            long word = 1L << ((address & (granularity - 1)) >>> 2);
+            for (int i = 0, slot = head; i < count; i++, slot = (slot + 1) % entries) {
+                if (blocks[slot] == block) {
+                    merges++;
+                    wordMasks[slot] |= word;
+                    return 0;
+                }
+            }
+            long written = 0;
+            if (count == entries) {
+                stalls++;
+                written = drainOldest();
+            }
+            int slot = (head + count) % entries;
+            blocks[slot] = block;
+            wordMasks[slot] = word;
+            count++;
+            return written;
+        }
+
+        //one access of the cache went by , returns the words written to memory
+        public long tick() {
+            if (drainEvery == 0 || ++clock % drainEvery != 0 || count == 0) return 0;
+            return drainOldest();
+        }
+
+        public long drainOldest() {
+            long written = Long.bitCount(wordMasks[head]);
+            head = (head + 1) % entries;
+            count--;
+            drains++;
+            return written;
+        }
+
+        public long drainAll() {
+            long written = 0;
+            while (count > 0) written += drainOldest();
+            return written;
+        }
+
+        public void resetStatistics() {
+            stores = merges = stalls = drains = 0;
+        }
+
+        public void save(DataOutput out) throws IOException {
+            out.writeInt(count);
+            for (int i = 0, slot = head; i < count; i++, slot = (slot + 1) % entries) {
+                out.writeLong(blocks[slot]);
+                out.writeLong(wordMasks[slot]);
+            }
+            out.writeLong(clock);
+            out.writeLong(stores);
+            out.writeLong(merges);
+            out.writeLong(stalls);
+            out.writeLong(drains);
+        }
+
+        public void load(DataInput in) throws IOException {
+            head = 0;
+            count = in.readInt();
+            for (int slot = 0; slot < count; slot++) {
+                blocks[slot] = in.readLong();
+                wordMasks[slot] = in.readLong();
+            }
+            clock = in.readLong();
+            stores = in.readLong();
+            merges = in.readLong();
+            stalls = in.readLong();
+            drains = in.readLong();
+        }
+
+        public String toString() {
+            return entries + " entries of " + granularity + " bytes , drain "
+                    + (drainEvery == 0 ? "when full" : "every " + drainEvery + " accesses");
+        }
+    }
+    public static class Config {
+        int cacheSize;
+        int blockSize;
+        int split; //0 if split , 1 if split
+        int associativity;
+        String writePolicy;
+        String writeMissPolicy;
+        String replacementPolicy = "lru";
+        String writeBuffer = "none";
+        String prefetcher = "none";
+        String victimCache = "none";
+        int addressBits = 64; //physical address width
+
+        public Config(int cacheSize, int blockSize, int split, int associativity, String writePolicy, String writeMissPolicy) {
+            this.cacheSize = cacheSize;
+            this.blockSize = blockSize;
+            this.split = split;
+            this.associativity = associativity;
+            this.writePolicy = writePolicy;
+            this.writeMissPolicy = writeMissPolicy;
+        }
+
+
+        static public ArrayList<Cache> readInput() throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            ArrayList<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(line.equals("")) break;
+                lines.add(line);
+            }
+            reader.close();
+
+            String lineArray[] = new String[lines.size()];
+            lineArray = lines.toArray(lineArray);
+            ArrayList<Request> cacheRequests = new ArrayList<>();
+            for (int i = 2; i < lineArray.length; i++) {
+                String command[] = lineArray[i].trim().split(" ");
+                Request request = new Request(Integer.parseInt(command[0]), command[1]);
+                cacheRequests.add(request);
+            }
+            return makeCaches(lineArray[0], lineArray[1], cacheRequests);
+        }
+
+        //builds the unified cache , or the data and instruction caches , from the two setting lines
+        static public ArrayList<Cache> makeCaches(String configLine, String sizeLine, ArrayList<Request> cacheRequests) {
+            ArrayList<Cache> caches = new ArrayList<>();
+            String config[] = configLine.trim().split(" - ");
+            String size[] = sizeLine.trim().split(" - ");
+            ArrayList<Config> configs = new ArrayList<>();
+
+            if (Integer.parseInt(config[1].trim()) == 0) {
+                Config cacheConfig = new Config(Integer.parseInt(sizeLine.trim()), Integer.parseInt(config[0].trim()),
+                        Integer.parseInt(config[1].trim()), Integer.parseInt(config[2].trim()), config[3].trim(), config[4].trim());
+                configs.add(cacheConfig);
+            } else if (Integer.parseInt(config[1].trim()) == 1) {
+                Config dataConfig = new Config(Integer.parseInt(size[1].trim()), Integer.parseInt(config[0].trim()),
+                        Integer.parseInt(config[1].trim()), Integer.parseInt(config[2].trim()), config[3].trim(), config[4].trim());
+                configs.add(dataConfig); // 0 index for data
+                Config instructionConfig = new Config(Integer.parseInt(size[1].trim()), Integer.parseInt(config[0].trim()),
+                        Integer.parseInt(config[1].trim()), Integer.parseInt(config[2].trim()), config[3].trim(), config[4].trim());
+                configs.add(instructionConfig);
+
+            }
+            if (config.length > 5) { //optional replacement policy , lru when missing
+                for (Config cacheConfig : configs) cacheConfig.replacementPolicy = config[5].trim();
+            }
+            if (config.length > 6) { //optional write buffer , none when missing
+                for (Config cacheConfig : configs) cacheConfig.writeBuffer = config[6].trim();
+            }
+            if (config.length > 7) { //optional prefetcher , none when missing
+                for (Config cacheConfig : configs) cacheConfig.prefetcher = config[7].trim();
+            }
+            if (config.length > 8) { //optional victim cache entries , none when missing
+                for (Config cacheConfig : configs) cacheConfig.victimCache = config[8].trim();
+            }
+            if (config.length > 9) { //optional address width in bits , 64 when missing
+                for (Config cacheConfig : configs) cacheConfig.addressBits = Integer.parseInt(config[9].trim());
+            }
+            Cache cache = new Cache(configs.get(0),cacheRequests);
+            caches.add(cache);
+            if (Integer.parseInt(config[1].trim()) == 1) {
+                Cache instructionCache = new Cache(configs.get(1),cacheRequests);
+                caches.add(instructionCache);
+            }
+            return caches;
+        }
+    }
+    //streams requests from a trace without keeping them in memory
+    public static class TraceReader implements Closeable {
+        static final int MAP_WINDOW = 64 << 20; //bytes mapped at a time
+        static final int READ_BUFFER = 1 << 20; //bytes read at a time when the input can't be mapped
+        FileChannel fileChannel; //null when reading from a stream
+        ReadableByteChannel channel;
+        ByteBuffer buffer;
+        long filePosition; //file offset of the next window to map
+        long fileSize;
+        boolean done;
+
+        public TraceReader(String path) throws IOException {
+            this.fileChannel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            this.channel = fileChannel;
+            this.fileSize = fileChannel.size();
+            this.buffer = ByteBuffer.allocate(0);
+        }
+
+        public TraceReader(InputStream input) {
+            this.channel = Channels.newChannel(input);
+            this.buffer = ByteBuffer.allocateDirect(READ_BUFFER);
+            this.buffer.flip();
+        }
+
+        //text or binary reader depending on the first bytes of the file
+        static public TraceReader open(String path) throws IOException {
+            ByteBuffer magic = ByteBuffer.allocate(BinaryTraceWriter.MAGIC.length);
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                channel.read(magic, 0);
+            }
+            if (Arrays.equals(magic.array(), BinaryTraceWriter.MAGIC)) return new BinaryTraceReader(path);
+            return new TraceReader(path);
+        }
+
+        //byte offset of the next request in the file , -1 when reading from a stream
+        public long position() {
+            return fileChannel == null ? -1 : filePosition - buffer.remaining();
+        }
+
+        public void seek(long position) {
+            filePosition = position;
+            buffer = ByteBuffer.allocate(0);
+            done = false;
+        }
+
+        //next byte of the input , -1 at the end
+        int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            if (fileChannel != null) {
+                if (filePosition >= fileSize) return false;
+                long length = Math.min(MAP_WINDOW, fileSize - filePosition);
+                buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, filePosition, length);
+                filePosition += length;
+                return true;
+            }
+            buffer.clear();
+            int count;
+            do {
+                count = channel.read(buffer);
+            } while (count == 0);
+            buffer.flip();
+            return count > 0;
+        }
+
+        //for the setting lines at the top of the trace , null at the end
+        public String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c = read();
+            if (c == -1) return null;
+            while (c != '\n' && c != -1) {
+                if (c != '\r') line.append((char) c);
+                c = read();
+            }
+            return line.toString();
+        }
+
+        private static boolean endOfColumn(int c) {
+            return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == -1;
+        }
+
+        //parses the next "<type> <hexaddr>" line into request , false at a blank line or the end
+        public boolean next(Request request) throws IOException {
+            if (done) return false;
+            int c = read();
+            while (c == ' ' || c == '\t' || c == '\r') c = read();
+            if (c == '\n' || c == -1) {
+                done = true;
+                return false;
+            }
+            int type = 0;
+            while (c >= '0' && c <= '9') {
+                type = type * 10 + (c - '0');
+                c = read();
+            }
+            if (c != ' ' && c != '\t') throw new NumberFormatException("Invalid request type in trace");
+            while (c == ' ' || c == '\t') c = read();
+            long address = 0;
+            int digits = 0;
+            while (true) {
+                int digit = Character.digit(c, 16);
+                if (digit < 0) break;
+                address = (address << 4) | digit;
+                digits++;
+                c = read();
+            }
+            //a column ends at white space or the end of the line - 0x1000 isn't read as 0
+            if (digits == 0 || digits > 16 || !endOfColumn(c))
+                throw new NumberFormatException("Invalid address in trace");
+            while (c == ' ' || c == '\t') c = read();
+            int core = 0; //optional third column of multi core traces
+            while (c >= '0' && c <= '9') {
+                core = core * 10 + (c - '0');
+                c = read();
+            }
+            while (c == ' ' || c == '\t' || c == '\r') c = read();
+            if (c != '\n' && c != -1) throw new NumberFormatException("Invalid core in trace");
+            if (c == -1) done = true;
+            request.type = type;
+            request.address = address;
+            request.core = core;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+    //binary trace layout:
+    //  magic , version byte
+    //  config line and size line - each a varint length followed by the ascii bytes
+    //  one record per request - varint of core * 4 + type , then the zigzag varint delta from the
+    //  previous address. Version 1 had a type byte , which reads the same for core 0
+    public static class BinaryTraceWriter implements Closeable {
+        static final byte[] MAGIC = {'C', 'S', 'T', 'R'};
+        static final int VERSION = 2;
+        static final int WRITE_BUFFER = 1 << 20;
+        FileChannel channel;
+        ByteBuffer buffer;
+        long lastAddress;
+
+        public BinaryTraceWriter(String path, String configLine, String sizeLine) throws IOException {
+            this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+            buffer.put(MAGIC);
+            buffer.put((byte) VERSION);
+            writeLine(configLine);
+            writeLine(sizeLine);
+        }
+
+        private void writeLine(String line) throws IOException {
+            byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+            writeVarint(bytes.length);
+            for (byte b : bytes) {
+                ensureRoom(1);
+                buffer.put(b);
+            }
+        }
+
+        private void writeVarint(long value) throws IOException {
+            ensureRoom(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void ensureRoom(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        public void write(Request request) throws IOException {
+            writeVarint((long) request.core << 2 | request.type);
+            long delta = request.address - lastAddress;
+            writeVarint((delta << 1) ^ (delta >> 63)); //zigzag - small negative deltas stay short
+            lastAddress = request.address;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ensureRoom(buffer.capacity());
+            channel.close();
+        }
+
+        static public void convert(String textPath, String binaryPath) throws IOException {
+            try (TraceReader reader = TraceReader.open(textPath)) {
+                String configLine = reader.readLine();
+                String sizeLine = reader.readLine();
+                try (BinaryTraceWriter writer = new BinaryTraceWriter(binaryPath, configLine, sizeLine)) {
+                    Request request = new Request(0, 0L);
+                    while (reader.next(request)) writer.write(request);
+                }
+            }
+        }
+    }
+    public static class BinaryTraceReader extends TraceReader {
+        long lastAddress;
+
+        public BinaryTraceReader(String path) throws IOException {
+            super(path);
+            for (byte b : BinaryTraceWriter.MAGIC) {
+                if (read() != (b & 0xFF)) throw new IOException("Not a binary trace: " + path);
+            }
+            int version = read();
+            if (version != 1 && version != BinaryTraceWriter.VERSION) throw new IOException("Unsupported binary trace version " + version);
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = read();
+                if (b == -1) throw new IOException("Truncated binary trace");
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            int length = (int) readVarint();
+            StringBuilder line = new StringBuilder(length);
+            for (int i = 0; i < length; i++) line.append((char) read());
+            return line.toString();
+        }
+
+        @Override
+        public boolean next(Request request) throws IOException {
+            int first = read();
+            if (first == -1) return false;
+            long kind = first;
+            if ((first & 0x80) != 0) { //the rest of the varint
+                kind &= 0x7F;
+                int shift = 7;
+                int b;
+                do {
+                    b = read();
+                    if (b == -1) throw new IOException("Truncated binary trace");
+                    kind |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+            }
+            long zigzag = readVarint();
+            lastAddress += (zigzag >>> 1) ^ -(zigzag & 1);
+            request.type = (int) (kind & 3);
+            request.core = (int) (kind >>> 2);
+            request.address = lastAddress;
+            return true;
+        }
+    }
+    public static class SplitCache {
+        Cache dataCache;
+        Cache instructionCache;
+        ArrayList<Request> requests;
+
+        public SplitCache(Cache dataCache,Cache instructionCache){ 
+            this.dataCache = dataCache;
+            this.instructionCache = instructionCache;
+            requests = dataCache.cacheRequests;
+        }
+        public void handleSplitRequest(ArrayList<Request> splitRequests){
+            for(Request request :splitRequests){
+                handleSplitRequest(request);
+            }
+        }
+        public void handleSplitRequest(Request request){
+            switch (request.type){
+                case 0 :
+                    dataCache.readData(request,0,1);
+                    break;
+                case 1 :
+                    dataCache.writeData(request);
+                    break;
+                case 2 :
+                    instructionCache.readData(request,2,1);
+            }
+        }
+        public void flushDirtySplit() {
+            dataCache.flushDirty();
+            instructionCache.flushDirty();
+        }
+    }
+
+    //attributes published over JMX by the live metrics
+    public interface LiveMetricsMBean {
+        long getAccesses();
+        long getHits();
+        long getMisses();
+        long getReplacements();
+        long getDirtyEvictions();
+        long getDemandFetch();
+        long getCopiesBack();
+        double getAccessesPerSecond();
+        double getIntervalHitRate();
+        double getIntervalDirtyEvictionRate();
+    }
+
+    //periodic statistics of a running simulation , printed to stderr every reportEvery accesses
+    //or reportSeconds seconds and published as the cachesimulator:type=LiveMetrics MBean
+    public static class LiveMetrics implements LiveMetricsMBean {
+        static final int HEATMAP_BUCKETS = 16;
+        static final long TIMER_CHECK = 1 << 16; //accesses between clock reads when only the timer is set
+        long reportEvery; //0 for no access count trigger
+        long reportNanos; //0 for no timer trigger
+        long checkEvery;
+        ArrayList<Cache> caches;
+        ObjectName objectName;
+        //totals at the last report
+        long lastAccesses;
+        long lastHits;
+        long lastReplacements;
+        long lastDirtyEvictions;
+        long lastTime;
+        long[][] lastSetMisses;
+        //published snapshot
+        volatile long accesses;
+        volatile long hits;
+        volatile long replacements;
+        volatile long dirtyEvictions;
+        volatile long demandFetch;
+        volatile long copiesBack;
+        volatile double accessesPerSecond;
+        volatile double intervalHitRate;
+        volatile double intervalDirtyEvictionRate;
+
+        public LiveMetrics(long reportEvery, double reportSeconds) {
+            this.reportEvery = reportEvery;
+            this.reportNanos = (long) (reportSeconds * 1e9);
+            if (reportEvery > 0) checkEvery = reportNanos > 0 ? Math.min(reportEvery, TIMER_CHECK) : reportEvery;
+            else checkEvery = TIMER_CHECK;
+        }
+
+        public void start(ArrayList<Cache> caches) {
+            this.caches = caches;
+            lastSetMisses = new long[caches.size()][];
+            for (int i = 0; i < caches.size(); i++) {
+                caches.get(i).setMisses = new long[caches.get(i).setNum];
+                lastSetMisses[i] = new long[caches.get(i).setNum];
+            }
+            lastTime = System.nanoTime();
+            try {
+                objectName = new ObjectName("cachesimulator:type=LiveMetrics");
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(this, LiveMetricsMBean.class), objectName);
+            } catch (JMException e) {
+                System.err.println("Live metrics are not published over JMX: " + e.getMessage());
+                objectName = null;
+            }
+        }
+
+        public void stop() {
+            if (objectName == null) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("Could not unregister live metrics: " + e.getMessage());
+            }
+        }
+
+        public void check(long accessCount) {
+            boolean due = reportEvery > 0 && accessCount - lastAccesses >= reportEvery;
+            if (!due && reportNanos > 0) due = System.nanoTime() - lastTime >= reportNanos;
+            if (due) report(accessCount);
+        }
+
+        public void report(long accessCount) {
+            long now = System.nanoTime();
+            long totalHits = 0, totalReplacements = 0, totalDirtyEvictions = 0, totalFetch = 0, totalCopiesBack = 0;
+            for (Cache cache : caches) {
+                totalHits += cache.dataReporter.hit + cache.instructionReporter.hit;
+                totalReplacements += cache.dataReporter.replace + cache.instructionReporter.replace;
+                totalDirtyEvictions += cache.dataReporter.dirtyEvictions;
+                totalFetch += cache.dataReporter.demandFetch;
+                totalCopiesBack += cache.dataReporter.copiesBack;
+            }
+            long intervalAccesses = accessCount - lastAccesses;
+            long intervalReplacements = totalReplacements - lastReplacements;
+            accessesPerSecond = now == lastTime ? 0 : intervalAccesses * 1e9 / (now - lastTime);
+            intervalHitRate = intervalAccesses == 0 ? 0 : (double) (totalHits - lastHits) / intervalAccesses;
+            intervalDirtyEvictionRate = intervalReplacements == 0 ? 0 : (double) (totalDirtyEvictions - lastDirtyEvictions) / intervalReplacements;
+            accesses = accessCount;
+            hits = totalHits;
+            replacements = totalReplacements;
+            dirtyEvictions = totalDirtyEvictions;
+            demandFetch = totalFetch;
+            copiesBack = totalCopiesBack;
+            System.err.println("accesses: " + accessCount + " rate: " + String.format("%.0f", accessesPerSecond) + "/s"
+                    + " interval hit rate: " + String.format("%.4f", intervalHitRate)
+                    + " dirty eviction rate: " + String.format("%.4f", intervalDirtyEvictionRate)
+                    + " set misses: " + heatmap());
+            lastAccesses = accessCount;
+            lastHits = totalHits;
+            lastReplacements = totalReplacements;
+            lastDirtyEvictions = totalDirtyEvictions;
+            lastTime = now;
+        }
+
+        //misses of the interval per range of sets , one row of buckets per cache
+        private String heatmap() {
+            StringBuilder map = new StringBuilder();
+            for (int c = 0; c < caches.size(); c++) {
+                long[] setMisses = caches.get(c).setMisses;
+                int buckets = Math.min(HEATMAP_BUCKETS, setMisses.length);
+                long[] bucketMisses = new long[buckets];
+                for (int set = 0; set < setMisses.length; set++) {
+                    bucketMisses[(int) ((long) set * buckets / setMisses.length)] += setMisses[set] - lastSetMisses[c][set];
+                    lastSetMisses[c][set] = setMisses[set];
+                }
+                if (caches.size() == 2) map.append(c == 0 ? "D" : " I");
+                map.append(Arrays.toString(bucketMisses));
+            }
+            return map.toString();
+        }
+
+        public long getAccesses() { return accesses; }
+        public long getHits() { return hits; }
+        public long getMisses() { return accesses - hits; }
+        public long getReplacements() { return replacements; }
+        public long getDirtyEvictions() { return dirtyEvictions; }
+        public long getDemandFetch() { return demandFetch; }
+        public long getCopiesBack() { return copiesBack; }
+        public double getAccessesPerSecond() { return accessesPerSecond; }
+        public double getIntervalHitRate() { return intervalHitRate; }
+        public double getIntervalDirtyEvictionRate() { return intervalDirtyEvictionRate; }
+    }
+
+    //a block of decoded requests shared by every configuration of a sweep
+    public static class RequestChunk {
+        int count;
+        int[] types;
+        long[] addresses;
+        int[] cores;
+
+        public RequestChunk(int capacity) {
+            types = new int[capacity];
+            addresses = new long[capacity];
+            cores = new int[capacity];
+        }
+
+        //false when the trace has no more requests
+        public boolean fill(TraceReader traceReader) throws IOException {
+            Request request = new Request(0, 0L);
+            count = 0;
+            while (count < types.length && traceReader.next(request)) {
+                types[count] = request.type;
+                addresses[count] = request.address;
+                cores[count] = request.core;
+                count++;
+            }
+            return count > 0;
+        }
+
+        public void add(int type, long address, int core) {
+            if (count == types.length) {
+                types = Arrays.copyOf(types, count * 2);
+                addresses = Arrays.copyOf(addresses, count * 2);
+                cores = Arrays.copyOf(cores, count * 2);
+            }
+            types[count] = type;
+            addresses[count] = address;
+            cores[count] = core;
+            count++;
+        }
+    }
+
+    //runs one trace through a grid of configurations at once , one configuration per task
+    public static class SweepEngine {
+        static final int CHUNK_SIZE = 1 << 20;
+        static final String TABLE_HEADER = "size\tblock\tassociativity\twrite\tallocate\tsplit\treplacement\twrite_buffer\tprefetcher\tvictim_cache"
+                + "\ti_accesses\ti_misses\ti_miss_rate\ti_replace"
+                + "\td_accesses\td_misses\td_miss_rate\td_replace\tdemand_fetch\tcopies_back"
+                + "\twb_merged\twb_stalls\tpf_issued\tpf_useful\tprefetch_fetch\tvc_hits";
+        ArrayList<CacheManager> runs = new ArrayList<>();
+
+        public SweepEngine(ArrayList<CacheManager> runs) {
+            this.runs = runs;
+        }
+
+        //grid file - one "name = value, value, ..." line for each of
+        //size , block , associativity , write , allocate and split , and optionally replacement ,
+        //writebuffer , prefetch and victim
+        public SweepEngine(String gridPath) throws IOException {
+            String[] sizes = null, blocks = null, associativities = null, writes = null, allocates = null, splits = null;
+            String[] replacements = {"lru"};
+            String[] writeBuffers = {"none"};
+            String[] prefetchers = {"none"};
+            String[] victimCaches = {"none"};
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(gridPath))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().equals("")) continue;
+                    String[] entry = line.split("=");
+                    String[] values = entry[1].trim().split("\\s*,\\s*");
+                    switch (entry[0].trim()) {
+                        case "size": sizes = values; break;
+                        case "block": blocks = values; break;
+                        case "associativity": associativities = values; break;
+                        case "write": writes = values; break;
+                        case "allocate": allocates = values; break;
+                        case "split": splits = values; break;
+                        case "replacement": replacements = values; break;
+                        case "writebuffer": writeBuffers = values; break;
+                        case "prefetch": prefetchers = values; break;
+                        case "victim": victimCaches = values; break;
+                        default: throw new IOException("Unknown sweep parameter: " + entry[0].trim());
+                    }
+                }
+            }
+            if (sizes == null || blocks == null || associativities == null || writes == null || allocates == null || splits == null)
+                throw new IOException("Sweep grid must list size, block, associativity, write, allocate and split");
+            for (String size : sizes)
+                for (String block : blocks)
+                    for (String associativity : associativities)
+                        for (String write : writes)
+                            for (String allocate : allocates)
+                                for (String split : splits)
+                                    for (String replacement : replacements)
+                                        for (String writeBuffer : writeBuffers)
+                                            for (String prefetcher : prefetchers)
+                                                for (String victimCache : victimCaches) {
+                                                    if (Integer.parseInt(block) * Integer.parseInt(associativity) > Integer.parseInt(size)) {
+                                                        System.err.println("Skipping size " + size + " block " + block + " associativity " + associativity);
+                                                        continue;
+                                                    }
+                                                    String configLine = block + " - " + split + " - " + associativity + " - " + write + " - " + allocate
+                                                            + " - " + replacement + " - " + writeBuffer + " - " + prefetcher + " - " + victimCache;
+                                                    String sizeLine = split.equals("1") ? size + " - " + size : size;
+                                                    runs.add(new CacheManager(Config.makeCaches(configLine, sizeLine, new ArrayList<>())));
+                                                }
+        }
+
+        //the trace is decoded once - each chunk is replayed by every configuration
+        //while the next chunk is being decoded
+        public void run(TraceReader traceReader) throws IOException {
+            traceReader.readLine(); //settings of the trace are replaced by the grid
+            traceReader.readLine();
+            int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), runs.size()));
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                RequestChunk current = new RequestChunk(CHUNK_SIZE);
+                RequestChunk next = new RequestChunk(CHUNK_SIZE);
+                boolean more = current.fill(traceReader);
+                while (more) {
+                    List<Future<?>> pending = new ArrayList<>();
+                    final RequestChunk chunk = current;
+                    for (CacheManager run : runs) pending.add(executor.submit(() -> run.handleChunk(chunk)));
+                    more = next.fill(traceReader);
+                    for (Future<?> future : pending) future.get();
+                    current = next;
+                    next = chunk;
+                }
+                for (CacheManager run : runs) run.flushDirty();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Sweep failed", e);
+            } finally {
+                executor.shutdown();
+                traceReader.close();
+            }
+        }
+
+        public void printTable() {
+            System.out.println(TABLE_HEADER);
+            for (CacheManager run : runs) System.out.println(run.resultRow());
+        }
+    }
+
+    //open addressing map from long keys to non negative long values
+    public static class LongLongMap {
+        static final long EMPTY = Long.MIN_VALUE;
+        long[] keys;
+        long[] values;
+        int size;
+        int mask;
+
+        public LongLongMap(int capacity) {
+            int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1);
+            keys = new long[slots];
+            values = new long[slots];
+            Arrays.fill(keys, EMPTY);
+            mask = slots - 1;
+        }
+
+        private int home(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private int slot(long key) {
+            int slot = home(key);
+            while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        //shifts the keys after the removed one back so no probe sequence is broken
+        public void remove(long key) {
+            int hole = slot(key);
+            if (keys[hole] == EMPTY) return;
+            size--;
+            for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                if (((next - home(keys[next])) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY;
+        }
+
+        //-1 when the key is missing
+        public long get(long key) {
+            int slot = slot(key);
+            return keys[slot] == EMPTY ? -1 : values[slot];
+        }
+
+        public void put(long key, long value) {
+            int slot = slot(key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+                if (size * 2 > keys.length) {
+                    values[slot] = value;
+                    grow();
+                    return;
+                }
+            }
+            values[slot] = value;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    //miss rate curves of LRU caches for every power of two set count and associativity from one pass
+    //over the trace. Every level of set count keeps an LRU stack per set cut at maxWays , and a
+    //fenwick tree over access times gives the exact stack distance for the fully associative curve.
+    //Write allocate is assumed - with no write allocate a write miss does not enter the stack , so
+    //caches of different sizes stop being inclusive and a stack pass is not valid.
+    public static class StackDistanceProfiler {
+        String tracePath;
+        int blockSize;
+        int offsetBitNum;
+        int maxSetBits;
+        int maxWays;
+        long[][] stacks; //[set bits][set * maxWays + depth] - block address + 1 , 0 when empty
+        long[][][] depthHits; //[set bits][0 data , 1 instruction][depth]
+        long[] accesses = new long[2];
+        //fully associative stack distance
+        LongLongMap lastAccess = new LongLongMap(1 << 16); //block address to time of last access
+        long[] tree; //fenwick tree marking the last access time of every block
+        long[] timeOwner; //block address at each marked time
+        int clock;
+        long[][] fullHits = new long[2][65]; //[type][bucket] - bucket p holds distances in [2^(p-1) , 2^p)
+
+        public StackDistanceProfiler(String tracePath, int maxSetBits, int maxWays) {
+            this.tracePath = tracePath;
+            this.maxSetBits = maxSetBits;
+            this.maxWays = maxWays;
+            stacks = new long[maxSetBits + 1][];
+            depthHits = new long[maxSetBits + 1][2][maxWays];
+            for (int bits = 0; bits <= maxSetBits; bits++) stacks[bits] = new long[(1 << bits) * maxWays];
+            tree = new long[(1 << 16) + 1];
+            timeOwner = new long[1 << 16];
+        }
+
+        public void run() throws IOException {
+            try (TraceReader traceReader = TraceReader.open(tracePath)) {
+                String config[] = traceReader.readLine().trim().split(" - ");
+                traceReader.readLine();
+                blockSize = Integer.parseInt(config[0].trim());
+                offsetBitNum = (int) (Math.log(blockSize) / Math.log(2));
+                Request request = new Request(0, 0L);
+                while (traceReader.next(request)) access(request.address >>> offsetBitNum, request.type == 2 ? 1 : 0);
+            }
+        }
+
+        public void access(long block, int type) {
+            accesses[type]++;
+            long entry = block + 1;
+            for (int bits = 0; bits <= maxSetBits; bits++) {
+                long[] stack = stacks[bits];
+                int first = (int) (block & ((1L << bits) - 1)) * maxWays;
+                int depth = 0;
+                while (depth < maxWays && stack[first + depth] != entry) depth++;
+                if (depth < maxWays) depthHits[bits][type][depth]++;
+                else depth = maxWays - 1; //miss - the least recently used block falls off
+                System.arraycopy(stack, first, stack, first + 1, depth);
+                stack[first] = entry;
+            }
+            fullyAssociativeAccess(block, type);
+        }
+
+        private void fullyAssociativeAccess(long block, int type) {
+            if (clock == timeOwner.length) compact();
+            long last = lastAccess.get(block);
+            if (last != -1) {
+                long distance = prefixSum(clock - 1) - prefixSum((int) last);
+                fullHits[type][distance == 0 ? 0 : 64 - Long.numberOfLeadingZeros(distance)]++;
+                add((int) last, -1);
+            }
+            add(clock, 1);
+            timeOwner[clock] = block;
+            lastAccess.put(block, clock);
+            clock++;
+        }
+
+        private void add(int time, long delta) {
+            for (int i = time + 1; i < tree.length; i += i & -i) tree[i] += delta;
+        }
+
+        private long prefixSum(int time) { //marks in [0 , time]
+            long sum = 0;
+            for (int i = time + 1; i > 0; i -= i & -i) sum += tree[i];
+            return sum;
+        }
+
+        //renumbers the live access times from zero , growing the tree when it is half full of blocks
+        private void compact() {
+            int live = lastAccess.size;
+            int capacity = live * 2 > timeOwner.length ? timeOwner.length * 2 : timeOwner.length;
+            long[] owners = new long[capacity];
+            int next = 0;
+            for (int time = 0; time < clock; time++) {
+                if (lastAccess.get(timeOwner[time]) != time) continue; //the block was accessed again later
+                owners[next] = timeOwner[time];
+                lastAccess.put(timeOwner[time], next);
+                next++;
+            }
+            timeOwner = owners;
+            tree = new long[capacity + 1];
+            for (int time = 0; time < next; time++) add(time, 1);
+            clock = next;
+        }
+
+        public long hits(int setBits, int ways, int type) {
+            long hits = 0;
+            for (int depth = 0; depth < ways; depth++) hits += depthHits[setBits][type][depth];
+            return hits;
+        }
+
+        public long fullyAssociativeHits(int wayBits, int type) {
+            long hits = 0;
+            for (int bucket = 0; bucket <= wayBits; bucket++) hits += fullHits[type][bucket];
+            return hits;
+        }
+
+        private String row(long size, long ways, long sets, long iHits, long dHits) {
+            long iMisses = accesses[1] - iHits;
+            long dMisses = accesses[0] - dHits;
+            return size + "\t" + blockSize + "\t" + ways + "\t" + sets
+                    + "\t" + accesses[1] + "\t" + iMisses + "\t" + String.format("%.4f", accesses[1] == 0 ? 0 : (double) iMisses / accesses[1])
+                    + "\t" + accesses[0] + "\t" + dMisses + "\t" + String.format("%.4f", accesses[0] == 0 ? 0 : (double) dMisses / accesses[0]);
+        }
+
+        public void printTable() {
+            System.out.println("size\tblock\tassociativity\tsets\ti_accesses\ti_misses\ti_miss_rate\td_accesses\td_misses\td_miss_rate");
+            for (int bits = 0; bits <= maxSetBits; bits++) {
+                for (int ways = 1; ways <= maxWays; ways *= 2) {
+                    System.out.println(row((long) blockSize * ways << bits, ways, 1L << bits, hits(bits, ways, 1), hits(bits, ways, 0)));
+                }
+            }
+            //fully associative caches larger than maxWays blocks , up to the number of distinct blocks
+            for (int wayBits = 0; wayBits < 63 && (1L << wayBits) / 2 < lastAccess.size; wayBits++) {
+                long ways = 1L << wayBits;
+                if (ways <= maxWays) continue;
+                System.out.println(row(blockSize * ways, ways, 1, fullyAssociativeHits(wayBits, 1), fullyAssociativeHits(wayBits, 0)));
+            }
+        }
+
+        //replays the trace through a write back , write allocate unified Cache for every
+        //set associative point of the table and reports any disagreement
+        public void verify() throws IOException {
+            ArrayList<CacheManager> runs = new ArrayList<>();
+            for (int bits = 0; bits <= maxSetBits; bits++) {
+                for (int ways = 1; ways <= maxWays; ways *= 2) {
+                    String configLine = blockSize + " - 0 - " + ways + " - wb - wa";
+                    String sizeLine = String.valueOf((long) blockSize * ways << bits);
+                    runs.add(new CacheManager(Config.makeCaches(configLine, sizeLine, new ArrayList<>())));
+                }
+            }
+            new SweepEngine(runs).run(TraceReader.open(tracePath));
+            int mismatches = 0;
+            int run = 0;
+            for (int bits = 0; bits <= maxSetBits; bits++) {
+                for (int ways = 1; ways <= maxWays; ways *= 2) {
+                    Cache cache = runs.get(run++).caches.get(0);
+                    long iMisses = accesses[1] - hits(bits, ways, 1);
+                    long dMisses = accesses[0] - hits(bits, ways, 0);
+                    if (cache.instructionReporter.miss != iMisses || cache.dataReporter.miss != dMisses) {
+                        System.out.println("Mismatch for " + (1L << bits) + " sets , " + ways + " ways: cache "
+                                + cache.instructionReporter.miss + "/" + cache.dataReporter.miss + " , stack " + iMisses + "/" + dMisses);
+                        mismatches++;
+                    }
+                }
+            }
+            System.out.println("Verified " + runs.size() + " configurations , " + mismatches + " mismatches");
+        }
+    }
+
+    //one configuration simulated on several threads , each owning the sets whose low index bits
+    //equal its shard number. A shard is a cache with 1/shards of the sets , fed with the block
+    //address shifted right by the shard bits , so its index is the rest of the original index and
+    //its tag is the original tag - every hit , miss and eviction is the same as in the single
+    //thread run. This holds for replacement policies with per set state , so random and brrip ,
+    //whose state is shared by all the sets , are refused when there is more than one shard.
+    public static class ShardedSimulation {
+        static final int CHUNK_SIZE = 1 << 18;
+        TraceReader traceReader;
+        ArrayList<Config> configs = new ArrayList<>(); //full size settings for the report
+        ArrayList<CacheManager> shards = new ArrayList<>();
+        int shardBits;
+        int offsetBitNum;
+
+        public ShardedSimulation(TraceReader traceReader, int threads) throws IOException {
+            this.traceReader = traceReader;
+            String configLine = traceReader.readLine();
+            String sizeLine = traceReader.readLine();
+            for (Cache cache : Config.makeCaches(configLine, sizeLine, new ArrayList<>())) configs.add(cache.cacheConfig);
+            Config config = configs.get(0);
+            //a shard would only see the stores of its own sets , so merges and stalls would differ
+            if (!config.writeBuffer.equals("none")) throw new IOException("Sharded runs don't model a write buffer");
+            //prefetches cross set boundaries , so they would land in other shards
+            if (!config.prefetcher.equals("none")) throw new IOException("Sharded runs don't model a prefetcher");
+            //the victim cache is shared by all the sets
+            if (!config.victimCache.equals("none")) throw new IOException("Sharded runs don't model a victim cache");
+            int setNum = config.cacheSize / (config.associativity * config.blockSize);
+            int shardNum = Math.min(Integer.highestOneBit(Math.max(threads, 1)), Integer.highestOneBit(setNum));
+            if (shardNum > 1 && sharedPolicyState(config.replacementPolicy))
+                throw new IOException("Sharded runs don't model " + config.replacementPolicy + " replacement , its state is shared by all the sets");
+            shardBits = Integer.numberOfTrailingZeros(shardNum);
+            offsetBitNum = (int) (Math.log(config.blockSize) / Math.log(2));
+            String shardSize = String.valueOf(config.cacheSize / shardNum);
+            if (config.split == 1) shardSize = shardSize + " - " + shardSize;
+            for (int i = 0; i < shardNum; i++) {
+                shards.add(new CacheManager(Config.makeCaches(configLine, shardSize, new ArrayList<>())));
+            }
+        }
+
+        //random draws from one generator and brrip counts fills over all the sets
+        static boolean sharedPolicyState(String replacementPolicy) {
+            String name = replacementPolicy.split(":")[0];
+            return name.equals("random") || name.equals("brrip");
+        }
+
+        //splits a chunk of the trace into one chunk per shard
+        static private void partition(RequestChunk chunk, RequestChunk[] parts, int shardBits, int offsetBitNum) {
+            long shardMask = (1L << shardBits) - 1;
+            for (RequestChunk part : parts) part.count = 0;
+            for (int i = 0; i < chunk.count; i++) {
+                long block = chunk.addresses[i] >>> offsetBitNum;
+                parts[(int) (block & shardMask)].add(chunk.types[i], (block >>> shardBits) << offsetBitNum, chunk.cores[i]);
+            }
+        }
+
+        //streams the trace into the shards , one thread each - the next chunk is partitioned
+        //while the shards work on the current one
+        static public void feedShards(TraceReader traceReader, int shardBits, int offsetBitNum,
+                                      List<Consumer<RequestChunk>> shards) throws IOException {
+            int shardNum = shards.size();
+            ExecutorService executor = Executors.newFixedThreadPool(shardNum);
+            try {
+                RequestChunk chunk = new RequestChunk(CHUNK_SIZE);
+                RequestChunk[] current = new RequestChunk[shardNum];
+                RequestChunk[] next = new RequestChunk[shardNum];
+                for (int i = 0; i < shardNum; i++) {
+                    current[i] = new RequestChunk(CHUNK_SIZE / shardNum * 2);
+                    next[i] = new RequestChunk(CHUNK_SIZE / shardNum * 2);
+                }
+                boolean more = chunk.fill(traceReader);
+                if (more) partition(chunk, current, shardBits, offsetBitNum);
+                while (more) {
+                    List<Future<?>> pending = new ArrayList<>();
+                    for (int i = 0; i < shardNum; i++) {
+                        final Consumer<RequestChunk> shard = shards.get(i);
+                        final RequestChunk part = current[i];
+                        pending.add(executor.submit(() -> shard.accept(part)));
+                    }
+                    more = chunk.fill(traceReader);
+                    if (more) partition(chunk, next, shardBits, offsetBitNum);
+                    for (Future<?> future : pending) future.get();
+                    RequestChunk[] swap = current;
+                    current = next;
+                    next = swap;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Sharded simulation failed", e);
+            } finally {
+                executor.shutdown();
+                traceReader.close();
+            }
+        }
+
+        public void run() throws IOException {
+            int shardNum = shards.size();
+            List<Consumer<RequestChunk>> handlers = new ArrayList<>();
+            for (CacheManager shard : shards) handlers.add(shard::handleChunk);
+            feedShards(traceReader, shardBits, offsetBitNum, handlers);
+            //shard 0 collects the counters of every shard and reports with the full size settings
+            CacheManager merged = shards.get(0);
+            merged.flushDirty();
+            for (int i = 1; i < shardNum; i++) {
+                CacheManager shard = shards.get(i);
+                shard.flushDirty();
+                for (int c = 0; c < merged.caches.size(); c++) {
+                    merged.caches.get(c).dataReporter.add(shard.caches.get(c).dataReporter);
+                    merged.caches.get(c).instructionReporter.add(shard.caches.get(c).instructionReporter);
+                }
+            }
+            for (int c = 0; c < merged.caches.size(); c++) merged.caches.get(c).setCacheConfig(configs.get(c));
+            if (merged.splitCache == null) {
+                merged.printCacheConfig(1);
+                merged.printResults(0);
+            } else {
+                merged.printCacheConfig(2);
+                merged.printResults(1);
+            }
+        }
+    }
+
+    public static class CoherenceReport {
+        long busReads; //read misses
+        long busReadExclusive; //write misses
+        long upgrades; //writes that hit a shared or owned line
+        long invalidations; //copies dropped from other caches
+        long cacheToCache; //misses served by the cache holding a modified or owned copy
+        long coherenceMisses; //misses on blocks an invalidation took away
+        long probes; //snoop lookups , or directory messages
+        long transferWords; //words moved between caches
+
+        public void add(CoherenceReport other) {
+            busReads += other.busReads;
+            busReadExclusive += other.busReadExclusive;
+            upgrades += other.upgrades;
+            invalidations += other.invalidations;
+            cacheToCache += other.cacheToCache;
+            coherenceMisses += other.coherenceMisses;
+            probes += other.probes;
+            transferWords += other.transferWords;
+        }
+    }
+
+    //private caches of several cores kept coherent with MESI , or MOESI when owned is set. Data reads
+    //and writes go through the protocol , instruction fetches of split caches don't since code is
+    //never written. A snooping bus probes every other cache on each bus request , a full map
+    //directory only sends messages to the caches holding the block - the protocol states are the
+    //same , only the probe count differs. The caches are write back and write allocate.
+    public static class CoherentCores {
+        static final byte SHARED = 1;
+        static final byte EXCLUSIVE = 2;
+        static final byte OWNED = 3;
+        static final byte MODIFIED = 4;
+        ArrayList<CacheManager> cores = new ArrayList<>();
+        boolean owned;
+        boolean directory;
+        ArrayList<LongLongMap> lostBlocks = new ArrayList<>(); //per core , 1 for blocks an invalidation took
+        CoherenceReport report = new CoherenceReport();
+        Request chunkRequest = new Request(0, 0L);
+
+        public CoherentCores(String configLine, String sizeLine, int coreNum, boolean owned, boolean directory) {
+            this.owned = owned;
+            this.directory = directory;
+            for (int core = 0; core < coreNum; core++) {
+                CacheManager manager = new CacheManager(Config.makeCaches(configLine, sizeLine, new ArrayList<>()));
+                Cache dataCache = manager.caches.get(0);
+                dataCache.lineState = new byte[dataCache.lineTags.length];
+                cores.add(manager);
+                lostBlocks.add(new LongLongMap(1024));
+            }
+        }
+
+        public void handleRequest(Request request) {
+            if (request.core >= cores.size()) {
+                System.out.println("Invalid request core");
+                return;
+            }
+            if (!cores.get(request.core).caches.get(0).inAddressSpace(request.address)) {
+                System.out.println("Invalid address");
+                return;
+            }
+            CacheManager core = cores.get(request.core);
+            switch (request.type) {
+                case 0:
+                    read(request.core, request.address, 0);
+                    break;
+                case 1:
+                    write(request.core, request.address);
+                    break;
+                case 2:
+                    if (core.splitCache != null) core.splitCache.instructionCache.readData(request, 2, 1);
+                    else read(request.core, request.address, 2);
+                    break;
+                default:
+                    System.out.println("Invalid request type");
+            }
+        }
+
+        public void handleChunk(RequestChunk chunk) {
+            for (int i = 0; i < chunk.count; i++) {
+                chunkRequest.type = chunk.types[i];
+                chunkRequest.address = chunk.addresses[i];
+                chunkRequest.core = chunk.cores[i];
+                handleRequest(chunkRequest);
+            }
+        }
+
+        //counts the miss as a coherence miss when the core last lost the block to an invalidation
+        private void checkLost(int core, long block) {
+            LongLongMap lost = lostBlocks.get(core);
+            if (lost.get(block) == 1) {
+                report.coherenceMisses++;
+                lost.put(block, 0);
+            }
+        }
+
+        public void read(int core, long address, int mode) {
+            Cache cache = cores.get(core).caches.get(0);
+            int indexInt = cache.getIndex(address);
+            long inputTag = cache.getTag(address);
+            int line = cache.lookUp(indexInt, inputTag);
+            if (line != -1) {
+                if (mode == 0) cache.dataReporter.hit++;
+                else cache.instructionReporter.hit++;
+                cache.hitHandle(indexInt, line);
+                return;
+            }
+            if (mode == 0) cache.dataReporter.miss++;
+            else cache.instructionReporter.miss++;
+            checkLost(core, address >>> cache.offsetBitNum);
+            report.busReads++;
+            report.probes += directory ? 1 : cores.size() - 1;
+            boolean shared = false;
+            boolean supplied = false;
+            for (int other = 0; other < cores.size(); other++) {
+                if (other == core) continue;
+                Cache otherCache = cores.get(other).caches.get(0);
+                int otherLine = otherCache.lookUp(indexInt, inputTag);
+                if (otherLine == -1) continue;
+                shared = true;
+                byte state = otherCache.lineState[otherLine];
+                if (state == SHARED) continue;
+                if (directory) report.probes++; //forwarded to the exclusive , owned or modified copy
+                if (state == EXCLUSIVE) {
+                    otherCache.lineState[otherLine] = SHARED;
+                } else { //modified or owned - the data comes from that cache
+                    supplied = true;
+                    if (state == MODIFIED && owned) {
+                        otherCache.lineState[otherLine] = OWNED;
+                    } else if (state == MODIFIED) { //MESI writes the block back as it goes shared
+                        otherCache.lineState[otherLine] = SHARED;
+                        otherCache.lineDirty[otherLine] = false;
+                        otherCache.dataReporter.copiesBack += (otherCache.cacheConfig.blockSize / 4);
+                    }
+                }
+            }
+            if (supplied) {
+                report.cacheToCache++;
+                report.transferWords += (cache.cacheConfig.blockSize / 4);
+            } else {
+                cache.dataReporter.demandFetch += (cache.cacheConfig.blockSize / 4);
+            }
+            int newLine = cache.missHandle(indexInt, inputTag, mode, 0);
+            cache.lineState[newLine] = shared ? SHARED : EXCLUSIVE;
+        }
+
+        public void write(int core, long address) {
+            Cache cache = cores.get(core).caches.get(0);
+            int indexInt = cache.getIndex(address);
+            long inputTag = cache.getTag(address);
+            int line = cache.lookUp(indexInt, inputTag);
+            if (line != -1) {
+                cache.dataReporter.hit++;
+                cache.hitHandle(indexInt, line);
+                byte state = cache.lineState[line];
+                if (state == SHARED || state == OWNED) {
+                    report.upgrades++;
+                    invalidateOthers(core, address >>> cache.offsetBitNum, indexInt, inputTag);
+                }
+                cache.lineState[line] = MODIFIED;
+                cache.lineDirty[line] = true;
+                return;
+            }
+            cache.dataReporter.miss++;
+            checkLost(core, address >>> cache.offsetBitNum);
+            report.busReadExclusive++;
+            if (invalidateOthers(core, address >>> cache.offsetBitNum, indexInt, inputTag)) {
+                report.cacheToCache++;
+                report.transferWords += (cache.cacheConfig.blockSize / 4);
+            } else {
+                cache.dataReporter.demandFetch += (cache.cacheConfig.blockSize / 4);
+            }
+            int newLine = cache.missHandle(indexInt, inputTag, 0, 0);
+            cache.lineState[newLine] = MODIFIED;
+            cache.lineDirty[newLine] = true;
+        }
+
+        //drops the block from the other caches - true when one of them held it modified or owned ,
+        //so its data moves to the writer instead of coming from memory
+        private boolean invalidateOthers(int core, long block, int indexInt, long inputTag) {
+            report.probes += directory ? 1 : cores.size() - 1;
+            boolean supplied = false;
+            for (int other = 0; other < cores.size(); other++) {
+                if (other == core) continue;
+                Cache otherCache = cores.get(other).caches.get(0);
+                int otherLine = otherCache.lookUp(indexInt, inputTag);
+                if (otherLine == -1) continue;
+                if (directory) report.probes += 2; //invalidation and its acknowledgement
+                byte state = otherCache.lineState[otherLine];
+                if (state == MODIFIED || state == OWNED) supplied = true;
+                otherCache.lineValid[otherLine] = false;
+                otherCache.lineDirty[otherLine] = false;
+                lostBlocks.get(other).put(block, 1);
+                report.invalidations++;
+            }
+            return supplied;
+        }
+
+        public void flushDirty() {
+            for (CacheManager core : cores) core.flushDirty();
+        }
+    }
+
+    //several cores with private caches of the trace settings , kept coherent , on a trace whose
+    //requests carry a core id. Like ShardedSimulation the sets are split between threads - a
+    //block only ever meets copies of itself in the same set of the other cores , so every shard
+    //runs its part of the protocol on its own and the threads never wait on each other
+    public static class CoherentSimulation {
+        TraceReader traceReader;
+        ArrayList<Config> configs = new ArrayList<>(); //full size settings for the report
+        ArrayList<CoherentCores> shards = new ArrayList<>();
+        int shardBits;
+        int offsetBitNum;
+        String protocol;
+        String interconnect;
+
+        public CoherentSimulation(TraceReader traceReader, int coreNum, String protocol, String interconnect, int threads) throws IOException {
+            this.traceReader = traceReader;
+            this.protocol = protocol;
+            this.interconnect = interconnect;
+            if (coreNum < 1) throw new IOException("Invalid core count: " + coreNum);
+            if (!protocol.equals("mesi") && !protocol.equals("moesi")) throw new IOException("Invalid coherence protocol: " + protocol);
+            if (!interconnect.equals("snoop") && !interconnect.equals("directory")) throw new IOException("Invalid interconnect: " + interconnect);
+            String configLine = traceReader.readLine();
+            String sizeLine = traceReader.readLine();
+            for (Cache cache : Config.makeCaches(configLine, sizeLine, new ArrayList<>())) configs.add(cache.cacheConfig);
+            Config config = configs.get(0);
+            if (!config.writePolicy.equals("wb") || !config.writeMissPolicy.equals("wa"))
+                throw new IOException("Coherent runs need write back and write allocate caches");
+            if (!config.writeBuffer.equals("none") || !config.prefetcher.equals("none") || !config.victimCache.equals("none"))
+                throw new IOException("Coherent runs don't model a write buffer , a prefetcher or a victim cache");
+            int setNum = config.cacheSize / (config.associativity * config.blockSize);
+            int shardNum = Math.min(Integer.highestOneBit(Math.max(threads, 1)), Integer.highestOneBit(setNum));
+            //the sets are sharded as in ShardedSimulation
+            if (shardNum > 1 && ShardedSimulation.sharedPolicyState(config.replacementPolicy))
+                throw new IOException("Coherent runs on several threads don't model " + config.replacementPolicy + " replacement , its state is shared by all the sets");
+            shardBits = Integer.numberOfTrailingZeros(shardNum);
+            offsetBitNum = (int) (Math.log(config.blockSize) / Math.log(2));
+            String shardSize = String.valueOf(config.cacheSize / shardNum);
+            if (config.split == 1) shardSize = shardSize + " - " + shardSize;
+            for (int i = 0; i < shardNum; i++) {
+                shards.add(new CoherentCores(configLine, shardSize, coreNum, protocol.equals("moesi"), interconnect.equals("directory")));
+            }
+        }
+
+        public void run() throws IOException {
+            List<Consumer<RequestChunk>> handlers = new ArrayList<>();
+            for (CoherentCores shard : shards) handlers.add(shard::handleChunk);
+            ShardedSimulation.feedShards(traceReader, shardBits, offsetBitNum, handlers);
+            //shard 0 collects the counters of every shard
+            CoherentCores merged = shards.get(0);
+            merged.flushDirty();
+            for (int i = 1; i < shards.size(); i++) {
+                CoherentCores shard = shards.get(i);
+                shard.flushDirty();
+                merged.report.add(shard.report);
+                for (int core = 0; core < merged.cores.size(); core++) {
+                    for (int c = 0; c < configs.size(); c++) {
+                        merged.cores.get(core).caches.get(c).dataReporter.add(shard.cores.get(core).caches.get(c).dataReporter);
+                        merged.cores.get(core).caches.get(c).instructionReporter.add(shard.cores.get(core).caches.get(c).instructionReporter);
+                    }
+                }
+            }
+            for (int core = 0; core < merged.cores.size(); core++) {
+                CacheManager manager = merged.cores.get(core);
+                for (int c = 0; c < configs.size(); c++) manager.caches.get(c).setCacheConfig(configs.get(c));
+                if (core == 0) {
+                    manager.printCacheConfig(manager.splitCache == null ? 1 : 2);
+                    System.out.println("Cores: " + merged.cores.size() + " Protocol: " + protocol.toUpperCase()
+                            + " Interconnect: " + interconnect.toUpperCase());
+                    System.out.println();
+                }
+                System.out.println("***CORE " + core + "***");
+                manager.printResults(manager.splitCache == null ? 0 : 1);
+                System.out.println();
+            }
+            CoherenceReport report = merged.report;
+            System.out.println("***COHERENCE STATISTICS***");
+            System.out.println("bus reads: " + report.busReads);
+            System.out.println("bus read exclusive: " + report.busReadExclusive);
+            System.out.println("upgrades: " + report.upgrades);
+            System.out.println("invalidations: " + report.invalidations);
+            System.out.println("coherence misses: " + report.coherenceMisses);
+            System.out.println("cache to cache transfers: " + report.cacheToCache);
+            System.out.println((merged.directory ? "directory messages: " : "snoop lookups: ") + report.probes);
+            System.out.println("cache to cache words: " + report.transferWords);
+        }
+    }
+
+    //estimates of a full run from part of the work , with 95% confidence intervals.
+    //set sampling simulates 1 in setRatio sets (picked by a hash of the index) and treats every
+    //sampled set as a sample unit. time sampling simulates , in every period of the trace , a
+    //warm up followed by a measured window and skips the rest - every window is a sample unit.
+    //The miss rate is a ratio estimate over the units and the traffic is the unit mean scaled to
+    //the number of units in the population.
+    public static class SampledSimulation {
+        static final double Z_95 = 1.96;
+        String tracePath;
+        CacheManager manager;
+        int setRatio; //0 for time sampling
+        long period;
+        long window;
+        long warmUp;
+        //per sample unit
+        long[] unitAccesses = new long[64];
+        long[] unitMisses = new long[64];
+        long[] unitFetch = new long[64];
+        long[] unitCopiesBack = new long[64];
+        int units;
+        long population;
+        long totalAccesses;
+        long finalFlush; //copies back of the dirty blocks left at the end of time sampling
+
+        private SampledSimulation(String tracePath) throws IOException {
+            this.tracePath = tracePath;
+            try (TraceReader traceReader = TraceReader.open(tracePath)) {
+                manager = new CacheManager(Config.makeCaches(traceReader.readLine(), traceReader.readLine(), new ArrayList<>()));
+            }
+        }
+
+        static public SampledSimulation setSampling(String tracePath, int setRatio) throws IOException {
+            if (setRatio < 1) throw new IOException("Set sampling needs a ratio of at least 1");
+            SampledSimulation sampled = new SampledSimulation(tracePath);
+            Config config = sampled.manager.caches.get(0).cacheConfig;
+            //only the stores of the sampled sets would reach the buffer , so merges and stalls would differ
+            if (!config.writeBuffer.equals("none")) throw new IOException("Set sampling doesn't model a write buffer");
+            //prefetches fill blocks into sets that aren't sampled
+            if (!config.prefetcher.equals("none")) throw new IOException("Set sampling doesn't model a prefetcher");
+            //the victim cache would only see the evictions of the sampled sets
+            if (!config.victimCache.equals("none")) throw new IOException("Set sampling doesn't model a victim cache");
+            sampled.setRatio = setRatio;
+            return sampled;
+        }
+
+        static public SampledSimulation timeSampling(String tracePath, long period, long window, long warmUp) throws IOException {
+            if (period <= 0 || window <= 0 || warmUp < 0) throw new IOException("Period and window must be positive , warm up not negative");
+            if (window + warmUp > period) throw new IOException("Warm up and window must fit in the period");
+            SampledSimulation sampled = new SampledSimulation(tracePath);
+            sampled.period = period;
+            sampled.window = window;
+            sampled.warmUp = warmUp;
+            return sampled;
+        }
+
+        private boolean sampledSet(int set) {
+            int hash = set * 0x9E3779B9;
+            return Integer.remainderUnsigned(hash ^ (hash >>> 16), setRatio) == 0;
+        }
+
+        private long misses() {
+            long misses = 0;
+            for (Cache cache : manager.caches) misses += cache.dataReporter.miss + cache.instructionReporter.miss;
+            return misses;
+        }
+
+        private long fetch() {
+            long fetch = 0;
+            for (Cache cache : manager.caches) fetch += cache.dataReporter.demandFetch;
+            return fetch;
+        }
+
+        private void ensureUnits(int count) {
+            if (count <= unitAccesses.length) return;
+            int capacity = Math.max(count, unitAccesses.length * 2);
+            unitAccesses = Arrays.copyOf(unitAccesses, capacity);
+            unitMisses = Arrays.copyOf(unitMisses, capacity);
+            unitFetch = Arrays.copyOf(unitFetch, capacity);
+            unitCopiesBack = Arrays.copyOf(unitCopiesBack, capacity);
+        }
+
+        public void run() throws IOException {
+            try (TraceReader traceReader = TraceReader.open(tracePath)) {
+                traceReader.readLine();
+                traceReader.readLine();
+                if (setRatio > 0) runSetSampling(traceReader);
+                else runTimeSampling(traceReader);
+            }
+        }
+
+        private void runSetSampling(TraceReader traceReader) throws IOException {
+            Cache indexCache = manager.caches.get(0);
+            int sets = (int) indexCache.indexMask + 1;
+            int[] unitOfSet = new int[sets];
+            for (int set = 0; set < sets; set++) {
+                if (!sampledSet(set)) {
+                    unitOfSet[set] = -1;
+                    continue;
+                }
+                ensureUnits(units + 1);
+                unitOfSet[set] = units++;
+            }
+            population = sets;
+            Cache dataCache = manager.caches.get(0);
+            Request request = new Request(0, 0L);
+            while (traceReader.next(request)) {
+                totalAccesses++;
+                int unit = unitOfSet[indexCache.getIndex(request.address)];
+                if (unit == -1) continue;
+                //a request only changes the counters of its own set - what setSampling refuses would break this
+                long misses = misses(), fetch = fetch(), copiesBack = dataCache.dataReporter.copiesBack;
+                manager.handleRequest(request);
+                unitAccesses[unit]++;
+                unitMisses[unit] += misses() - misses;
+                unitFetch[unit] += fetch() - fetch;
+                unitCopiesBack[unit] += dataCache.dataReporter.copiesBack - copiesBack;
+            }
+            //dirty blocks left at the end belong to their set
+            for (int line = 0; line < dataCache.lineDirty.length; line++) {
+                if (dataCache.lineValid[line] && dataCache.lineDirty[line] && unitOfSet[line / dataCache.ways] != -1)
+                    unitCopiesBack[unitOfSet[line / dataCache.ways]] += dataCache.cacheConfig.blockSize / 4;
+            }
+            manager.flushDirty();
+        }
+
+        private void runTimeSampling(TraceReader traceReader) throws IOException {
+            Cache dataCache = manager.caches.get(0);
+            Request request = new Request(0, 0L);
+            long position = 0;
+            long misses = 0, fetch = 0, copiesBack = 0;
+            while (traceReader.next(request)) {
+                totalAccesses++;
+                long offset = position++ % period;
+                if (offset >= warmUp + window) continue; //skipped part of the period
+                if (offset == warmUp) { //window starts
+                    misses = misses();
+                    fetch = fetch();
+                    copiesBack = dataCache.dataReporter.copiesBack;
+                    ensureUnits(units + 1);
+                    units++;
+                }
+                manager.handleRequest(request);
+                if (offset >= warmUp) {
+                    int unit = units - 1;
+                    unitAccesses[unit]++;
+                    if (offset == warmUp + window - 1) { //window ends
+                        unitMisses[unit] = misses() - misses;
+                        unitFetch[unit] = fetch() - fetch;
+                        unitCopiesBack[unit] = dataCache.dataReporter.copiesBack - copiesBack;
+                    }
+                }
+            }
+            if (units > 0 && unitAccesses[units - 1] < window) units--; //the trace ended inside the last window
+            population = Math.max(totalAccesses / window, units); //windows the whole trace would make
+            long before = dataCache.dataReporter.copiesBack;
+            manager.flushDirty();
+            finalFlush = dataCache.dataReporter.copiesBack - before;
+        }
+
+        //ratio of two unit sums with its confidence half width
+        private double[] ratioEstimate(long[] numerator, long[] denominator) {
+            double sumNumerator = 0, sumDenominator = 0;
+            for (int i = 0; i < units; i++) {
+                sumNumerator += numerator[i];
+                sumDenominator += denominator[i];
+            }
+            if (sumDenominator == 0) return new double[]{0, 0};
+            double ratio = sumNumerator / sumDenominator;
+            if (units < 2) return new double[]{ratio, Double.NaN};
+            double squares = 0;
+            for (int i = 0; i < units; i++) {
+                double residual = numerator[i] - ratio * denominator[i];
+                squares += residual * residual;
+            }
+            double meanDenominator = sumDenominator / units;
+            double variance = (1 - (double) units / population) * squares / (units - 1) / (units * meanDenominator * meanDenominator);
+            return new double[]{ratio, Z_95 * Math.sqrt(Math.max(variance, 0))};
+        }
+
+        //population total of a unit value with its confidence half width
+        private double[] totalEstimate(long[] values) {
+            double sum = 0;
+            for (int i = 0; i < units; i++) sum += values[i];
+            if (units == 0) return new double[]{0, 0};
+            double mean = sum / units;
+            if (units < 2) return new double[]{mean * population, Double.NaN};
+            double squares = 0;
+            for (int i = 0; i < units; i++) squares += (values[i] - mean) * (values[i] - mean);
+            double variance = (double) population * population * (1 - (double) units / population) * squares / (units - 1) / units;
+            return new double[]{mean * population, Z_95 * Math.sqrt(Math.max(variance, 0))};
+        }
+
+        public void printEstimates(boolean full) throws IOException {
+            double[] missRate = ratioEstimate(unitMisses, unitAccesses);
+            double[] fetch = totalEstimate(unitFetch);
+            double[] copiesBack = totalEstimate(unitCopiesBack);
+            copiesBack[0] += finalFlush;
+            System.out.println("***SAMPLED STATISTICS***");
+            if (setRatio > 0) System.out.println("Set sampling: " + units + " of " + population + " sets");
+            else System.out.println("Time sampling: " + units + " windows of " + window + " accesses , warm up " + warmUp + " , period " + period);
+            System.out.println("accesses: " + totalAccesses);
+            System.out.println("miss rate: " + String.format("%.4f", missRate[0]) + " +- " + String.format("%.4f", missRate[1]) + " (95% confidence)");
+            System.out.println("misses: " + Math.round(missRate[0] * totalAccesses));
+            System.out.println("demand fetch: " + Math.round(fetch[0]) + " +- " + Math.round(fetch[1]));
+            System.out.println("copies back: " + Math.round(copiesBack[0]) + " +- " + Math.round(copiesBack[1]));
+            if (!full) return;
+            CacheManager fullRun;
+            try (TraceReader traceReader = TraceReader.open(tracePath)) {
+                fullRun = new CacheManager(traceReader);
+                Request request = new Request(0, 0L);
+                while (traceReader.next(request)) fullRun.handleRequest(request);
+            }
+            fullRun.flushDirty();
+            long accesses = 0, misses = 0, fullFetch = 0;
+            for (Cache cache : fullRun.caches) {
+                accesses += cache.dataReporter.hit + cache.dataReporter.miss + cache.instructionReporter.hit + cache.instructionReporter.miss;
+                misses += cache.dataReporter.miss + cache.instructionReporter.miss;
+                fullFetch += cache.dataReporter.demandFetch;
+            }
+            System.out.println("***FULL RUN***");
+            System.out.println("miss rate: " + String.format("%.4f", accesses == 0 ? 0 : (double) misses / accesses));
+            System.out.println("misses: " + misses);
+            System.out.println("demand fetch: " + fullFetch);
+            System.out.println("copies back: " + fullRun.caches.get(0).dataReporter.copiesBack);
+        }
+    }
+
+    //the caches of the trace settings as the first level , backed by unified lower levels.
+    //levels file - one line per level below the first , from the closest one:
+    //  size - block - associativity - write - allocate - inclusive|exclusive|nine [- replacement [- writebuffer [- prefetcher
+    //  [- victimcache [- addressbits]]]]]
+    public static class Hierarchy {
+        CacheManager firstLevel;
+        ArrayList<Cache> lowerLevels = new ArrayList<>();
+
+        public Hierarchy(String levelsPath, TraceReader traceReader) throws IOException {
+            firstLevel = new CacheManager(traceReader);
+            ArrayList<Cache> upper = firstLevel.caches;
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(levelsPath))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().equals("")) continue;
+                    String level[] = line.trim().split(" - ");
+                    String configLine = level[1].trim() + " - 0 - " + level[2].trim() + " - " + level[3].trim() + " - " + level[4].trim();
+                    for (int i = 6; i < level.length; i++) configLine += " - " + level[i].trim();
+                    Cache cache = Config.makeCaches(configLine, level[0].trim(), new ArrayList<>()).get(0);
+                    switch (level[5].trim()) {
+                        case "inclusive": cache.inclusion = Cache.INCLUSIVE; break;
+                        case "exclusive": cache.inclusion = Cache.EXCLUSIVE; break;
+                        case "nine": cache.inclusion = Cache.NINE; break;
+                        default: throw new IOException("Invalid inclusion policy: " + level[5].trim());
+                    }
+                    for (Cache upperCache : upper) upperCache.nextLevel = cache;
+                    cache.upperLevels.addAll(upper);
+                    lowerLevels.add(cache);
+                    upper = new ArrayList<>();
+                    upper.add(cache);
+                }
+            }
+        }
+
+        //the first level streams the trace and prints the usual report , its dirty blocks are
+        //flushed into the level below , and so on down to memory
+        public void run() throws IOException {
+            firstLevel.manageRequests();
+            for (int i = 0; i < lowerLevels.size(); i++) {
+                lowerLevels.get(i).flushDirty();
+                printLevel(i + 2, lowerLevels.get(i));
+            }
+        }
+
+        public void printLevel(int level, Cache cache) {
+            String inclusion[] = {"NINE", "INCLUSIVE", "EXCLUSIVE"};
+            System.out.println();
+            System.out.println("***LEVEL " + level + " STATISTICS***");
+            System.out.println("Size: " + cache.cacheConfig.cacheSize + " Associativity: " + cache.cacheConfig.associativity
+                    + " Block size: " + cache.cacheConfig.blockSize + " Inclusion: " + inclusion[cache.inclusion]);
+            System.out.println("INSTRUCTIONS");
+            System.out.println("accesses: " + (cache.instructionReporter.hit + cache.instructionReporter.miss));
+            System.out.println("misses: " + cache.instructionReporter.miss);
+            System.out.println("miss rate: " + String.format("%.4f", firstLevel.calculateMissRate(cache, 1)) + " (hit rate " + String.format("%.4f", firstLevel.calculateHitRate(cache, 1)) + ")");
+            System.out.println("replace: " + cache.instructionReporter.replace);
+            System.out.println("DATA");
+            System.out.println("accesses: " + (cache.dataReporter.hit + cache.dataReporter.miss));
+            System.out.println("misses: " + cache.dataReporter.miss);
+            System.out.println("miss rate: " + String.format("%.4f", firstLevel.calculateMissRate(cache, 0)) + " (hit rate " + String.format("%.4f", firstLevel.calculateHitRate(cache, 0)) + ")");
+            System.out.println("replace: " + cache.dataReporter.replace);
+            System.out.println("TRAFFIC (in words)");
+            System.out.println("demand fetch: " + cache.dataReporter.demandFetch);
+            System.out.println("copies back: " + cache.dataReporter.copiesBack);
+            if (cache.prefetcher != null) firstLevel.printPrefetch(cache.prefetchReport);
+        }
+    }
+
+    public static class CacheManager {
+        ArrayList<Cache> caches;
+        SplitCache splitCache; //null for a unified cache
+        String configLine; //settings lines when the caches came from a trace - kept for checkpoints
+        String sizeLine;
+        TraceReader traceReader; //null when the whole input was read in memory
+        LiveMetrics liveMetrics; //null when no periodic report was asked for
+        String checkpointPath; //null when no checkpoint is taken
+        long checkpointEvery;
+        long position; //requests of the trace already simulated
+        Request chunkRequest = new Request(0, 0L); //reused when replaying a chunk
+
+        public CacheManager() throws IOException {
+            this(Config.readInput());
+        }
+        public CacheManager(TraceReader traceReader) throws IOException {
+            this(traceReader.readLine(), traceReader.readLine());
+            this.traceReader = traceReader;
+        }
+        private CacheManager(String configLine, String sizeLine) {
+            this(Config.makeCaches(configLine, sizeLine, new ArrayList<>()));
+            this.configLine = configLine;
+            this.sizeLine = sizeLine;
+        }
+        public CacheManager(ArrayList<Cache> caches) {
+            this.caches = caches;
+            if (caches.size() == 2) splitCache = new SplitCache(caches.get(0),caches.get(1));
+        }
+        public void manageRequests() throws IOException {
+            if (traceReader != null && (liveMetrics != null || checkpointPath != null)) {
+                streamWithChecks();
+            } else if (traceReader != null) {
+                Request request = new Request(0, 0L);
+                while (traceReader.next(request)) handleRequest(request);
+                traceReader.close();
+            } else if (splitCache != null) {
+                splitCache.handleSplitRequest(caches.get(0).cacheRequests);
+            } else {
+                caches.get(0).handleRequest(caches.get(0).cacheRequests);
+            }
+            flushDirty();
+            if(splitCache == null){ //unified
+                printCacheConfig(1);
+                printResults(0);
+            }else{
+                printCacheConfig(2);
+                printResults(1);
+            }
+        }
+        //the streaming loop with metrics and checkpoints every few accesses - kept apart so the
+        //plain loop pays nothing
+        private void streamWithChecks() throws IOException {
+            if (liveMetrics != null) liveMetrics.start(caches);
+            Request request = new Request(0, 0L);
+            long nextMetrics = liveMetrics != null ? position + liveMetrics.checkEvery : Long.MAX_VALUE;
+            long nextCheckpoint = checkpointPath != null ? position + checkpointEvery : Long.MAX_VALUE;
+            long nextCheck = Math.min(nextMetrics, nextCheckpoint);
+            while (traceReader.next(request)) {
+                handleRequest(request);
+                if (++position == nextCheck) {
+                    if (position == nextMetrics) {
+                        liveMetrics.check(position);
+                        nextMetrics += liveMetrics.checkEvery;
+                    }
+                    if (position == nextCheckpoint) {
+                        saveCheckpoint(checkpointPath);
+                        nextCheckpoint += checkpointEvery;
+                    }
+                    nextCheck = Math.min(nextMetrics, nextCheckpoint);
+                }
+            }
+            traceReader.close();
+            if (liveMetrics != null) {
+                //nothing left to report when the last periodic report fell on the final access
+                if (position != liveMetrics.lastAccesses) liveMetrics.report(position);
+                liveMetrics.stop();
+            }
+        }
+
+        //checkpoint layout: magic , version , the settings lines , trace position (requests , byte
+        //offset or -1 , delta state of a binary trace) , then the state of every cache.
+        //written to a temporary file and moved over the old checkpoint so a crash keeps the last one
+        static final int CHECKPOINT_MAGIC = 0x4353434B; //CSCK
+        static final int CHECKPOINT_VERSION = 5;
+
+        public void saveCheckpoint(String path) throws IOException {
+            Path target = Paths.get(path);
+            Path temporary = Paths.get(path + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(CHECKPOINT_VERSION);
+                out.writeUTF(configLine);
+                out.writeUTF(sizeLine);
+                out.writeLong(position);
+                out.writeLong(traceReader.position());
+                out.writeLong(traceReader instanceof BinaryTraceReader ? ((BinaryTraceReader) traceReader).lastAddress : 0);
+                for (Cache cache : caches) cache.save(out);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        //resume continues the trace after the checkpointed position with the saved counters ,
+        //fork keeps the warmed caches but starts the trace and the counters from zero
+        public void restoreCheckpoint(String path, boolean fork) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path)), 1 << 16))) {
+                if (in.readInt() != CHECKPOINT_MAGIC) throw new IOException("Not a checkpoint: " + path);
+                int version = in.readInt();
+                if (version != CHECKPOINT_VERSION) throw new IOException("Unsupported checkpoint version " + version);
+                String savedConfigLine = in.readUTF();
+                String savedSizeLine = in.readUTF();
+                if (!savedConfigLine.trim().equals(configLine.trim()) || !savedSizeLine.trim().equals(sizeLine.trim()))
+                    throw new IOException("Checkpoint settings differ from the trace settings");
+                long savedPosition = in.readLong();
+                long byteOffset = in.readLong();
+                long lastAddress = in.readLong();
+                for (Cache cache : caches) cache.load(in, fork);
+                if (fork) {
+                    for (Cache cache : caches) {
+                        cache.dataReporter = new OutputReport();
+                        cache.instructionReporter = new OutputReport();
+                        if (cache.writeBuffer != null) cache.writeBuffer.resetStatistics();
+                        cache.prefetchReport = new PrefetchReport();
+                        if (cache.victimCache != null) cache.victimCache.resetStatistics();
+                        if (cache.classifier != null) cache.classifier.resetStatistics();
+                        if (cache.workingSet != null) cache.workingSet.resetStatistics(); //the blocks stay touched
+                        if (cache.timing != null) cache.timing.resetStatistics();
+                    }
+                    return;
+                }
+                position = savedPosition;
+                if (byteOffset >= 0 && traceReader.fileChannel != null) {
+                    traceReader.seek(byteOffset);
+                    if (traceReader instanceof BinaryTraceReader) ((BinaryTraceReader) traceReader).lastAddress = lastAddress;
+                } else { //a stream can't seek - read past the simulated requests
+                    Request request = new Request(0, 0L);
+                    for (long i = 0; i < savedPosition && traceReader.next(request); i++) ;
+                }
+            }
+        }
+        public void handleRequest(Request request) {
+            if (splitCache != null) splitCache.handleSplitRequest(request);
+            else caches.get(0).handleRequest(request);
+        }
+        public void handleChunk(RequestChunk chunk) {
+            for (int i = 0; i < chunk.count; i++) {
+                chunkRequest.type = chunk.types[i];
+                chunkRequest.address = chunk.addresses[i];
+                handleRequest(chunkRequest);
+            }
+        }
+        public void flushDirty() {
+            if (splitCache != null) splitCache.flushDirtySplit();
+            else caches.get(0).flushDirty();
+        }
+        //one tab separated line with the settings and the statistics of printResults
+        public String resultRow() {
+            Config config = caches.get(0).cacheConfig;
+            Cache instructionCache = caches.get(splitCache != null ? 1 : 0);
+            Cache dataCache = caches.get(0);
+            long fetch = dataCache.dataReporter.demandFetch;
+            if (splitCache != null) fetch += instructionCache.dataReporter.demandFetch;
+            PrefetchReport prefetch = new PrefetchReport();
+            long victimHits = 0;
+            for (Cache cache : caches) {
+                prefetch.add(cache.prefetchReport);
+                if (cache.victimCache != null) victimHits += cache.victimCache.hits;
+            }
+            return config.cacheSize + "\t" + config.blockSize + "\t" + config.associativity + "\t" + config.writePolicy
+                    + "\t" + config.writeMissPolicy + "\t" + config.split + "\t" + config.replacementPolicy + "\t" + config.writeBuffer + "\t" + config.prefetcher + "\t" + config.victimCache
+                    + "\t" + (instructionCache.instructionReporter.hit + instructionCache.instructionReporter.miss)
+                    + "\t" + instructionCache.instructionReporter.miss
+                    + "\t" + String.format("%.4f", calculateMissRate(instructionCache, 1))
+                    + "\t" + instructionCache.instructionReporter.replace
+                    + "\t" + (dataCache.dataReporter.hit + dataCache.dataReporter.miss)
+                    + "\t" + dataCache.dataReporter.miss
+                    + "\t" + String.format("%.4f", calculateMissRate(dataCache, 0))
+                    + "\t" + dataCache.dataReporter.replace
+                    + "\t" + fetch + "\t" + dataCache.dataReporter.copiesBack
+                    + "\t" + (dataCache.writeBuffer != null ? dataCache.writeBuffer.merges : 0)
+                    + "\t" + (dataCache.writeBuffer != null ? dataCache.writeBuffer.stalls : 0)
+                    + "\t" + prefetch.issued + "\t" + prefetch.useful + "\t" + prefetch.fetch
+                    + "\t" + victimHits;
+        }
+        public void printCacheConfig(int mode){ //1 for unified , 2 for split
+            System.out.println("***CACHE SETTINGS***");
+            if(mode == 1) System.out.println("Unified I- D-cache");
+            else if(mode == 2) System.out.println("Split I- D-cache");
+            if(mode == 1) System.out.println("Size: "+caches.get(0).cacheConfig.cacheSize);
+            else if(mode == 2) {
+                System.out.println("I-cache size: "+caches.get(1).cacheConfig.cacheSize);
+                System.out.println("D-cache size: "+caches.get(0).cacheConfig.cacheSize);
+            }
+            System.out.println("Associativity: "+caches.get(0).cacheConfig.associativity);
+            System.out.println("Block size: "+caches.get(0).cacheConfig.blockSize);
+            //write policy
+            if(caches.get(0).cacheConfig.writePolicy.equals("wb")) System.out.println("Write policy: "+"WRITE BACK");
+            else if(caches.get(0).cacheConfig.writePolicy.equals("wt")) System.out.println("Write policy: "+"WRITE THROUGH");
+            //write miss policy
+            if(caches.get(0).cacheConfig.writeMissPolicy.equals("wa")) System.out.println("Allocation policy: "+"WRITE ALLOCATE");
+            else if(caches.get(0).cacheConfig.writeMissPolicy.equals("nw")) System.out.println("Allocation policy: "+"WRITE NO ALLOCATE");
+            if(!caches.get(0).cacheConfig.replacementPolicy.equals("lru")) System.out.println("Replacement policy: "+caches.get(0).cacheConfig.replacementPolicy.toUpperCase());
+            if(caches.get(0).writeBuffer != null) System.out.println("Write buffer: "+caches.get(0).writeBuffer);
+            if(caches.get(0).prefetcher != null) System.out.println("Prefetcher: "+caches.get(0).cacheConfig.prefetcher.toUpperCase());
+            if(caches.get(0).victimCache != null) System.out.println("Victim cache: "+caches.get(0).victimCache.blocks.length+" entries");
+            TimingModel timing = caches.get(0).timing;
+            if(timing != null) System.out.println("Timing: hit "+timing.hitLatency+" , miss "+timing.missPenalty+" , write back "+timing.writeBackCost
+                    +" , "+timing.bankFree.length+" banks , "+timing.mshrDone.length+" MSHRs");
+            System.out.println();
+        }
+        public void printResults(int split){
+            System.out.println("***CACHE STATISTICS***");
+            System.out.println("INSTRUCTIONS");
+            if(split ==1 ) {
+                long iAccess = (caches.get(1).instructionReporter.hit + caches.get(1).instructionReporter.miss);
+                System.out.println("accesses: " + iAccess);
+                System.out.println("misses: " + caches.get(1).instructionReporter.miss);
+                System.out.println("miss rate: " +String.format("%.4f", calculateMissRate(caches.get(1), 1))+" (hit rate "+String.format("%.4f",calculateHitRate(caches.get(1),1))+")");
+                System.out.println("replace: " + caches.get(1).instructionReporter.replace);
+                printMissClasses(caches.get(1), 1);
+            }else if(split == 0){
+                long i2Access = caches.get(0).instructionReporter.miss+caches.get(0).instructionReporter.hit ;
+                System.out.println("accesses: " + i2Access);
+                System.out.println("misses: " + caches.get(0).instructionReporter.miss);
+                System.out.println("miss rate: " +String.format("%.4f", calculateMissRate(caches.get(0), 1))+" (hit rate "+String.format("%.4f",calculateHitRate(caches.get(0),1))+")");
+                System.out.println("replace: " + caches.get(0).instructionReporter.replace);
+                printMissClasses(caches.get(0), 1);
+            }
+            System.out.println("DATA");
+            long dAccess = (caches.get(0).dataReporter.hit + caches.get(0).dataReporter.miss);
+            System.out.println("accesses: "+dAccess);
+            System.out.println("misses: "+caches.get(0).dataReporter.miss);
+            System.out.println("miss rate: "+String.format("%.4f",calculateMissRate(caches.get(0),0))+" (hit rate "+String.format("%.4f",calculateHitRate(caches.get(0),0))+")");
+            System.out.println("replace: "+caches.get(0).dataReporter.replace);
+            printMissClasses(caches.get(0), 0);
+            System.out.println("TRAFFIC (in words)");
+            long fetch = -1;
+            if(split == 1) fetch = caches.get(0).dataReporter.demandFetch + caches.get(1).dataReporter.demandFetch;
+            else if(split == 0) fetch = caches.get(0).dataReporter.demandFetch;
+            System.out.println("demand fetch: "+fetch);
+            System.out.println("copies back: "+caches.get(0).dataReporter.copiesBack);
+            WriteBuffer writeBuffer = caches.get(0).writeBuffer;
+            if(writeBuffer != null) {
+                System.out.println("WRITE BUFFER");
+                System.out.println("stores: " + writeBuffer.stores);
+                System.out.println("merged: " + writeBuffer.merges);
+                System.out.println("full stalls: " + writeBuffer.stalls);
+                System.out.println("drains: " + writeBuffer.drains);
+            }
+            if(caches.get(0).workingSet != null && caches.get(0).workingSet.sampleEvery >= 0) {
+                for (int c = 0; c < caches.size(); c++) printWorkingSet(caches.get(c), split == 1 ? (c == 0 ? "D-cache " : "I-cache ") : "");
+            }
+            if(caches.get(0).victimCache != null) {
+                long hits = 0, swaps = 0, evictions = 0;
+                for (Cache cache : caches) {
+                    hits += cache.victimCache.hits;
+                    swaps += cache.victimCache.swaps;
+                    evictions += cache.victimCache.evictions;
+                }
+                System.out.println("VICTIM CACHE");
+                System.out.println("hits: " + hits);
+                System.out.println("swaps: " + swaps);
+                System.out.println("evictions: " + evictions);
+            }
+            if(caches.get(0).prefetcher != null) {
+                PrefetchReport prefetch = new PrefetchReport();
+                for (Cache cache : caches) prefetch.add(cache.prefetchReport);
+                printPrefetch(prefetch);
+            }
+            if(caches.get(0).timing != null) printTiming();
+
+        }
+        //the instruction stream is in the last cache , split or not
+        public void printTiming(){
+            TimingModel instruction = caches.get(caches.size() - 1).timing;
+            TimingModel data = caches.get(0).timing;
+            long bankConflicts = 0, mshrFull = 0, cycles = 0;
+            for (Cache cache : caches) {
+                bankConflicts += cache.timing.bankConflicts;
+                mshrFull += cache.timing.mshrFull;
+                cycles = Math.max(cycles, cache.timing.clock);
+            }
+            System.out.println("TIMING (in cycles)");
+            System.out.println("instruction AMAT: " + String.format("%.4f", instruction.amat(1)));
+            System.out.println("instruction stalls: " + instruction.stalls[1]);
+            System.out.println("data AMAT: " + String.format("%.4f", data.amat(0)));
+            System.out.println("data stalls: " + data.stalls[0]);
+            System.out.println("bank conflicts: " + bankConflicts);
+            System.out.println("MSHR full stalls: " + mshrFull);
+            System.out.println("estimated cycles: " + cycles);
+        }
+        public void printMissClasses(Cache cache, int type){ //0 for data , 1 for instruction
+            if(cache.classifier == null) return;
+            System.out.println("compulsory misses: " + cache.classifier.compulsory[type]);
+            System.out.println("capacity misses: " + cache.classifier.capacity[type]);
+            System.out.println("conflict misses: " + cache.classifier.conflict[type]);
+        }
+        public void printWorkingSet(Cache cache, String label){
+            WorkingSet workingSet = cache.workingSet;
+            System.out.println(label + "WORKING SET");
+            System.out.println("unique blocks: " + workingSet.touched.size + " (" + workingSet.touched.size * cache.cacheConfig.blockSize + " bytes)");
+            System.out.println("first touch misses: " + (workingSet.firstTouchMisses[0] + workingSet.firstTouchMisses[1]));
+            System.out.println("tracking memory: " + workingSet.touched.memoryBytes() + " bytes");
+            for (int i = 0; i < workingSet.sampleCount; i++) {
+                System.out.println("accesses: " + (i + 1) * workingSet.sampleEvery + " unique blocks: " + workingSet.samples[i]);
+            }
+        }
+        public void printPrefetch(PrefetchReport prefetch){
+            System.out.println("PREFETCH");
+            System.out.println("issued: " + prefetch.issued);
+            System.out.println("useful: " + prefetch.useful + " (accuracy " + String.format("%.4f", prefetch.issued == 0 ? 0 : (double) prefetch.useful / prefetch.issued) + ")");
+            System.out.println("late: " + prefetch.late);
+            System.out.println("unused: " + prefetch.unused);
+            System.out.println("polluting: " + prefetch.polluting);
+            System.out.println("prefetch fetch: " + prefetch.fetch);
+        }
+        public double calculateMissRate(Cache cache,int mode){ // 0 for data and 1 for instruction
+            if(mode == 0) {
+                long miss = cache.dataReporter.miss;
+                long access = (cache.dataReporter.hit + cache.dataReporter.miss);
+                if(access == 0) return 0;
+                double dataMissRate = ((double)miss / access);
+                return dataMissRate;
+            }
+            if(mode == 1){
+                long miss = cache.instructionReporter.miss;
+                long access = (cache.instructionReporter.hit + cache.instructionReporter.miss);
+                if(access == 0) return 0;
+                double missRate = ((double) miss / access);
+                return missRate;
+            }
+            return -1;
+        }
+        public double calculateHitRate(Cache cache,int mode){
+            if(mode == 0){
+                long access = (cache.dataReporter.hit + cache.dataReporter.miss);
+                if(access == 0) return 0;
+                double missRate = calculateMissRate(cache,0);
+                double hitRate = (1 - missRate);
+                return hitRate;
+            }
+            if(mode == 1){
+                long access = (cache.instructionReporter.hit + cache.instructionReporter.miss);
+                if(access == 0) return 0;
+                double missRate = calculateMissRate(cache,1);
+                double hitRate = (1 - missRate);
+                return hitRate;
+            }
+            return -1;
+        }
+    }
+
+}